@@ -118,7 +118,7 @@ public class Config
   {
     if (pkictx != null) return(pkictx);
     Security security = this.getSecurity();
-    pkictx = new PKIContext(security.getIdentity(),security.getTrusted());
+    pkictx = new PKIContext(security.getIdentity(),security.getTrusted(),security.sessionCache(),security.sessionTimeout(),security.sessionTickets());
     return(pkictx);
   }
 
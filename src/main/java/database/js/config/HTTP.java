@@ -27,6 +27,9 @@ public class HTTP
   public final Ports ports;
   public final int timeout;
   public final int bufsize;
+  public final int bufpool;
+  public final int reqtmout;
+  public final boolean http2;
   public final String tmppath;
   public final String virtendp;
   public final int graceperiod;
@@ -40,10 +43,14 @@ public class HTTP
   HTTP(Handlers handlers, JSONObject config) throws Exception
   {
     this.timeout = Config.<Integer>get(config,"KeepAlive") * 1000;
+    this.reqtmout = Config.get(config,"RequestTimeout",30) * 1000;
     this.host = Config.get(config,"Host",InetAddress.getLocalHost().getHostName());
 
     JSONObject buffers = Config.getSection(config,"buffers");
     this.bufsize = Config.get(buffers,"network",4096);
+    this.bufpool = Config.get(buffers,"pool",16);
+
+    this.http2 = Config.get(config,"http2",true);
 
     JSONObject deploy = config.getJSONObject("deployment");
     graceperiod = Config.get(deploy,"grace.period");
@@ -23,7 +23,10 @@ import database.js.database.NameValuePair;
 public class Security
 {
   private final String oaurl;
+  private final int sescache;
+  private final int sestmout;
   private final String usrattr;
+  private final boolean tickets;
   private final Keystore trust;
   private final Keystore identity;
   private final ArrayList<NameValuePair<Object>> headers;
@@ -58,6 +61,11 @@ public class Security
 
     trust = new Keystore(file,type,null,passwd);
 
+    // TLS session resumption
+    this.sescache = Config.get(config,"session.cache",20480);
+    this.sestmout = Config.get(config,"session.timeout",86400);
+    this.tickets = Config.get(config,"session.tickets",true);
+
     JSONObject oauth = Config.getSection(config,"oauth2");
 
     this.oaurl = Config.get(oauth,"url");
@@ -87,6 +95,21 @@ public class Security
     return(identity);
   }
 
+  public int sessionCache()
+  {
+    return(sescache);
+  }
+
+  public int sessionTimeout()
+  {
+    return(sestmout);
+  }
+
+  public boolean sessionTickets()
+  {
+    return(tickets);
+  }
+
   public String oauthurl()
   {
     return(oaurl);
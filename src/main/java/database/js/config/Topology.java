@@ -18,9 +18,12 @@ import org.json.JSONObject;
 public class Topology
 {
   public final boolean hot;
+  public final boolean virtual;
   public final short workers;
   public final short waiters;
   public final short servers;
+  public final short acceptors;
+  public final int queue;
 
   public final int heartbeat;
 
@@ -48,11 +51,21 @@ public class Topology
 
     this.waiters = waiters;
 
+    // Listeners per port, more than one requires SO_REUSEPORT
+    short acceptors = Config.get(config,"acceptors",1).shortValue();
+    this.acceptors = acceptors < 1 ? 1 : acceptors;
+
     if (workers > 0) this.workers = workers;
     else             this.workers = (short) (multi * 8 * cores);
 
+    // Tasks allowed to wait for a worker, before requests are turned away
+    this.queue = Config.get(config,"queue",4 * this.workers);
+
     this.hot = Config.get(config,"hot-standby");
 
+    String executor = Config.get(config,"executor","platform");
+    this.virtual = executor.trim().equalsIgnoreCase("virtual");
+
     JSONObject ipc = config.getJSONObject("ipc");
 
     this.extnds = this.workers * 2;
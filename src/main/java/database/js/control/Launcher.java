@@ -249,7 +249,7 @@ public class Launcher implements ILauncher
     out.println();
 
     Topology topology = config.getTopology();
-    out.println("Cores: "+Topology.cores+", Waiters: "+topology.waiters+", Workers: "+topology.workers);
+    out.println("Cores: "+Topology.cores+", Waiters: "+topology.waiters+", Workers: "+topology.workers+(topology.virtual ? " (virtual)" : ""));
     out.println();
 
     SimpleDateFormat format = new SimpleDateFormat("dd-MMM-yyyy HH:mm:ss");
@@ -15,6 +15,8 @@ package database.js.database;
 import java.util.ArrayList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 
 public class Pool
@@ -30,6 +32,8 @@ public class Pool
   private final String username;
   private final String password;
   private final ArrayList<Database> pool;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition released = lock.newCondition();
   private final static Logger logger = Logger.getLogger("rest");
 
 
@@ -77,9 +81,11 @@ public class Pool
   }
 
 
-  synchronized void add(Database database)
+  void add(Database database)
   {
-    pool.add(database);
+    lock.lock();
+    try {pool.add(database);}
+    finally {lock.unlock();}
   }
 
 
@@ -98,12 +104,22 @@ public class Pool
   }
 
 
-  public synchronized boolean remove(Database database)
+  public boolean remove(Database database)
   {
-    if (!pool.remove(database))
-      return(false);
+    lock.lock();
+
+    try
+    {
+      if (!pool.remove(database))
+        return(false);
+
+      size--;
+    }
+    finally
+    {
+      lock.unlock();
+    }
 
-    size--;
     database.disconnect();
     logger.fine("Pool["+(proxy ? "proxy" : "anonymous")+"] connection closed");
 
@@ -130,10 +146,12 @@ public class Pool
 
     Database database = null;
 
-    synchronized(this)
+    lock.lock();
+
+    try
     {
       while(pool.size() == 0 && size == max)
-        this.wait();
+        released.await();
 
       if (pool.size() == 0)
       {
@@ -145,6 +163,10 @@ public class Pool
         database = pool.remove(0);
       }
     }
+    finally
+    {
+      lock.unlock();
+    }
 
     return(database);
   }
@@ -165,18 +187,26 @@ public class Pool
       }
     }
 
-    synchronized(this)
+    lock.lock();
+
+    try
     {
       database.touch();
       pool.add(0,database);
-      this.notifyAll();
+      released.signalAll();
+    }
+    finally
+    {
+      lock.unlock();
     }
   }
 
 
   public void close()
   {
-    synchronized(this)
+    lock.lock();
+
+    try
     {
       closed = true;
       int size = this.pool.size();
@@ -190,12 +220,18 @@ public class Pool
         catch(Exception e) {;}
       }
     }
+    finally
+    {
+      lock.unlock();
+    }
   }
 
 
   public void validate()
   {
-    synchronized(this)
+    lock.lock();
+
+    try
     {
       int size = this.pool.size();
 
@@ -207,6 +243,10 @@ public class Pool
 
       this.size = pool.size();
     }
+    finally
+    {
+      lock.unlock();
+    }
   }
 
 
@@ -218,8 +258,9 @@ public class Pool
 
   ArrayList<Database> connections()
   {
-    synchronized(this)
-    {return(new ArrayList<Database>(pool));}
+    lock.lock();
+    try {return(new ArrayList<Database>(pool));}
+    finally {lock.unlock();}
   }
 
 
@@ -16,7 +16,10 @@ import java.util.logging.Logger;
 import database.js.config.Config;
 import database.js.servers.Server;
 import database.js.control.Launcher;
+import database.js.pools.ThreadPool;
+import database.js.security.PKIContext;
 import database.js.cluster.PreAuthRecord;
+import database.js.servers.http.BufferPool;
 import database.js.servers.rest.RESTClient;
 import database.js.handlers.file.Deployment;
 import database.js.servers.http.HTTPRequest;
@@ -66,7 +69,7 @@ public class AdminHandler extends Handler
         worker = new RESTClient(server,id,started);
 
       server.register(worker);
-      request.respond(response.page());
+      request.respond(response);
 
       worker.init(request.channel());
       return(null);
@@ -84,7 +87,7 @@ public class AdminHandler extends Handler
 
       case "status":
         String status = Launcher.getStatus(config());
-        response.setBody(status);
+        response.setBody(status+metrics());
         break;
 
       case "authenticate":
@@ -103,4 +106,18 @@ public class AdminHandler extends Handler
 
     return(response);
   }
+
+
+  private String metrics()
+  {
+    String nl = System.lineSeparator();
+    String metrics = "Buffers: hits "+BufferPool.hits()+", misses "+BufferPool.misses()+", outstanding "+BufferPool.outstanding()+nl;
+
+    for(ThreadPool pool : ThreadPool.pools())
+      metrics += "Pool: "+pool+nl;
+
+    metrics += "TLS: full "+PKIContext.full()+", resumed "+PKIContext.resumed()+", avg "+PKIContext.latency()+" us"+nl;
+
+    return(metrics+nl);
+  }
 }
\ No newline at end of file
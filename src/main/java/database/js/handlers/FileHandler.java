@@ -12,6 +12,7 @@
 
 package database.js.handlers;
 
+import java.nio.ByteBuffer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import database.js.config.Config;
@@ -116,14 +117,14 @@ public class FileHandler extends Handler
 
 
     boolean gzip = false;
-    byte[] content = null;
+    ByteBuffer content = null;
 
     if (file.compressed)
       gzip = (encodings != null && encodings.contains("gzip"));
 
     try
     {
-      content = file.get(gzip);
+      content = file.buffer(gzip);
       if (gzip) response.setHeader("Content-Encoding","gzip");
     }
     catch (Exception e)
@@ -22,6 +22,7 @@ import database.js.handlers.rest.Rest;
 import database.js.handlers.rest.Guid;
 import database.js.handlers.file.PathUtil;
 import database.js.servers.rest.RESTClient;
+import database.js.servers.http.HTTPStream;
 import database.js.servers.http.HTTPRequest;
 import database.js.servers.http.HTTPResponse;
 import database.js.handlers.rest.JSONFormatter;
@@ -141,7 +142,26 @@ public class RestHandler extends Handler
     Rest rest = new Rest(server,savepoint,remote);
     response.setContentType(json);
 
-    response.setBody(rest.execute(path,payload,returning));
+    // Select results are sent while fetching
+    HTTPStream stream = request.stream(response);
+    String result = rest.execute(path,payload,returning,stream);
+
+    if (result == null)
+    {
+      stream.close();
+      log(logger,request,null);
+      return(null);
+    }
+
+    stream.abort();
+
+    if (stream.open())
+    {
+      logger.warning("Streamed response failed: "+result);
+      return(null);
+    }
+
+    response.setBody(result);
 
     log(logger,request,response);
     return(response);
@@ -210,6 +230,14 @@ public class RestHandler extends Handler
   {
     long time = System.nanoTime() - request.start();
 
+    if (response == null)
+    {
+      if (logger.getLevel() == Level.INFO || logger.getLevel() == Level.FINE || logger.getLevel() == Level.FINEST)
+        logger.log(logger.getLevel(),request.path()+" ["+time/1000000+"]ms (streamed)");
+
+      return;
+    }
+
     if (logger.getLevel() == Level.INFO)
       logger.log(logger.getLevel(),request.path()+" ["+time/1000000+"]ms");
 
@@ -14,6 +14,7 @@ package database.js.handlers.file;
 
 import java.io.File;
 import java.util.Date;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.io.Serializable;
 import java.io.FileInputStream;
@@ -24,10 +25,12 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.text.SimpleDateFormat;
 import java.io.ByteArrayInputStream;
+import java.nio.channels.FileChannel;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 import database.js.config.HTTP.FilePattern;
 import java.util.concurrent.ConcurrentHashMap;
+import static java.nio.file.StandardOpenOption.*;
 
 
 public class Deployment
@@ -449,6 +452,27 @@ public class Deployment
     }
 
 
+    public ByteBuffer buffer(boolean gzip) throws Exception
+    {
+      boolean usecache = true;
+      if (compressed && !gzip) usecache = false;
+
+      if (cache || !usecache)
+        return(ByteBuffer.wrap(get(gzip)));
+
+      // Files too large to cache are mapped, not read into heap
+      File file = new File(actpath);
+
+      if (!file.exists())
+        throw new Exception("File "+actpath+" not found");
+
+      FileChannel fc = FileChannel.open(file.toPath(),READ);
+
+      try {return(fc.map(FileChannel.MapMode.READ_ONLY,0,fc.size()));}
+      finally {fc.close();}
+    }
+
+
     public String fileext()
     {
       return(fileext);
@@ -108,6 +108,43 @@ public class JSONFormatter
   }
 
 
+  static String escape(Object value)
+  {
+    if (value == null)
+      return("null");
+
+    if (value instanceof Boolean)
+      return(value.toString());
+
+    if (value instanceof Long)
+      return(value.toString());
+
+    if (value instanceof Integer)
+      return(value.toString());
+
+    if (value instanceof Float)
+      return(value.toString());
+
+    if (value instanceof Double)
+      return(value.toString());
+
+    if (value instanceof BigInteger)
+      return(value.toString());
+
+    if (value instanceof BigDecimal)
+      return(value.toString());
+
+    value = JSONObject.quote(value.toString());
+    return(value.toString());
+  }
+
+
+  static String quote(Object str)
+  {
+    return("\""+str+"\"");
+  }
+
+
   private static class Content
   {
     private final Type type;
@@ -343,42 +380,6 @@ public class JSONFormatter
       str += nl + lev + "]";
       return(str);
     }
-
-    String escape(Object value)
-    {
-      if (value == null)
-        return("null");
-
-      if (value instanceof Boolean)
-        return(value.toString());
-
-      if (value instanceof Long)
-        return(value.toString());
-
-      if (value instanceof Integer)
-        return(value.toString());
-
-      if (value instanceof Float)
-        return(value.toString());
-
-      if (value instanceof Double)
-        return(value.toString());
-
-      if (value instanceof BigInteger)
-        return(value.toString());
-
-      if (value instanceof BigDecimal)
-        return(value.toString());
-
-      value = JSONObject.quote(value.toString());
-      return(value.toString());
-    }
-
-
-    String quote(Object str)
-    {
-      return("\""+str+"\"");
-    }
  }
 
 
@@ -0,0 +1,95 @@
+/*
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation.
+
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ */
+
+package database.js.handlers.rest;
+
+import java.io.OutputStream;
+import static database.js.handlers.rest.JSONFormatter.escape;
+import static database.js.handlers.rest.JSONFormatter.quote;
+
+
+/**
+ *
+ * Writes a select result in the same layout as JSONFormatter, one row at a time.
+ * Since "more" is only known when all rows are fetched, it is written last.
+ *
+ */
+public class JSONStream implements Session.RowHandler
+{
+  private int rows = 0;
+  private final boolean compact;
+  private final String[] columns;
+  private final OutputStream out;
+
+  private final static String nl =
+    System.lineSeparator();
+
+
+  public JSONStream(OutputStream out, String[] columns, boolean compact) throws Exception
+  {
+    this.out = out;
+    this.columns = columns;
+    this.compact = compact;
+
+    String str = "{" + nl;
+    str += "  " + quote("success") + ": true," + nl;
+
+    if (compact)
+    {
+      str += "  " + quote("columns") + ":  [";
+
+      for (int j = 0; j < columns.length; j++)
+      {
+        String next = "";
+        if (j < columns.length - 1) next = ",";
+        str += escape(columns[j])+next;
+      }
+
+      str += "]," + nl;
+    }
+
+    str += "  " + quote("rows") + ":" + nl + "  [";
+    out.write(str.getBytes());
+  }
+
+
+  @Override
+  public void add(Object[] row) throws Exception
+  {
+    String str = "";
+    if (rows++ > 0) str += ",";
+
+    str += nl + "    ";
+    str += compact ? "[" : "{";
+
+    for (int j = 0; j < row.length; j++)
+    {
+      String next = "";
+      if (j < row.length - 1) next = ",";
+
+      if (compact) str += escape(row[j])+next;
+      else         str += quote(columns[j])+": "+escape(row[j])+next;
+    }
+
+    str += compact ? "]" : "}";
+    out.write(str.getBytes());
+  }
+
+
+  public void close(boolean more) throws Exception
+  {
+    String str = nl + "  ]," + nl;
+    str += "  " + quote("more") + ": " + more + nl + "}";
+
+    out.write(str.getBytes());
+  }
+}
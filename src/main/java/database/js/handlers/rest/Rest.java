@@ -20,6 +20,7 @@ import org.json.JSONArray;
 import java.sql.Savepoint;
 import org.json.JSONObject;
 import java.util.ArrayList;
+import java.io.OutputStream;
 import java.io.FileInputStream;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -81,6 +82,18 @@ public class Rest
 
 
   public String execute(String path, String payload, boolean returning)
+  {
+    return(execute(path,payload,returning,null));
+  }
+
+
+  /**
+   *
+   * If out is given, a single select is written to out while fetching,
+   * and null is returned. Everything else is returned as usual.
+   *
+   */
+  public String execute(String path, String payload, boolean returning, OutputStream out)
   {
     try
     {
@@ -93,7 +106,7 @@ public class Rest
       if (request.nvlfunc().equals("script"))
         return(script(request.payload));
 
-      return(exec(request,returning));
+      return(exec(request,returning,out));
     }
     catch (Throwable e)
     {
@@ -226,6 +239,12 @@ public class Rest
 
 
   private String exec(Request request, boolean returning)
+  {
+    return(exec(request,returning,null));
+  }
+
+
+  private String exec(Request request, boolean returning, OutputStream out)
   {
     String response = null;
 
@@ -260,7 +279,7 @@ public class Rest
               response = call(request.payload); break;
 
             case "select" :
-              response = select(request.payload); break;
+              response = select(request.payload,out); break;
 
             case "fetch" :
               response = fetch(request.payload); break;
@@ -515,7 +534,7 @@ public class Rest
   }
 
 
-  private String select(JSONObject payload)
+  private String select(JSONObject payload, OutputStream out)
   {
     if (state.session() == null)
     {
@@ -574,6 +593,21 @@ public class Rest
       cursor.dateformat = dateform;
 
       String[] columns = state.session().getColumnNames(cursor);
+
+      if (out != null)
+      {
+        JSONStream json = new JSONStream(out,columns,compact);
+        state.session().fetch(cursor,skip,json);
+
+        json.close(!cursor.closed);
+        state.release();
+
+        if (cursor.name == null)
+          state.session().closeCursor(cursor);
+
+        return(null);
+      }
+
       ArrayList<Object[]> table = state.session().fetch(cursor,skip);
 
       state.release();
@@ -376,6 +376,14 @@ public class Session
 
 
   public ArrayList<Object[]> fetch(Cursor cursor, int skip) throws Exception
+  {
+    ArrayList<Object[]> table = new ArrayList<Object[]>();
+    fetch(cursor,skip,table::add);
+    return(table);
+  }
+
+
+  public int fetch(Cursor cursor, int skip, RowHandler handler) throws Exception
   {
     boolean timeconv = false;
     DateTimeFormatter formatter = null;
@@ -386,19 +394,19 @@ public class Session
       else formatter = DateTimeFormatter.ofPattern(cursor.dateformat);
     }
 
+    int fetched = 0;
     int columns = cursor.columns.length;
-    ArrayList<Object[]> table = new ArrayList<Object[]>();
 
     for (int i = 0; i < skip && cursor.rset.next(); i++)
       database.fetch(cursor.rset,timeconv,formatter);
 
-    for (int i = 0; (cursor.rows <= 0 || i < cursor.rows) && cursor.rset.next(); i++)
-      table.add(database.fetch(columns,cursor.rset,timeconv,formatter));
+    for (; (cursor.rows <= 0 || fetched < cursor.rows) && cursor.rset.next(); fetched++)
+      handler.add(database.fetch(columns,cursor.rset,timeconv,formatter));
 
-    if (cursor.rows <= 0 || table.size() < cursor.rows)
+    if (cursor.rows <= 0 || fetched < cursor.rows)
       closeCursor(cursor);
 
-    return(table);
+    return(fetched);
   }
 
 
@@ -485,4 +493,10 @@ public class Session
     Transaction,
     Dedicated
   }
+
+
+  public static interface RowHandler
+  {
+    void add(Object[] row) throws Exception;
+  }
 }
\ No newline at end of file
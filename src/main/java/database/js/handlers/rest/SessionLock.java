@@ -13,6 +13,8 @@
 package database.js.handlers.rest;
 
 import java.util.logging.Logger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 
 public class SessionLock
@@ -20,7 +22,8 @@ public class SessionLock
   private int shared = 0;
   private long thread = 0;
   private boolean exclusive = false;
-  private final Object LOCK = new Object();
+  private final ReentrantLock LOCK = new ReentrantLock();
+  private final Condition changed = LOCK.newCondition();
   private final static Logger logger = Logger.getLogger("rest");
 
 
@@ -33,17 +36,19 @@ public class SessionLock
   {
     long thread = Thread.currentThread().getId();
 
-    synchronized(LOCK)
+    LOCK.lock();
+
+    try
     {
       boolean owner = this.thread == thread;
 
       while(!owner && this.exclusive)
-        LOCK.wait();
+        changed.await();
 
       if (exclusive)
       {
         while(!owner && this.shared > 0)
-          LOCK.wait();
+          changed.await();
 
         this.thread = thread;
         this.exclusive = true;
@@ -51,11 +56,15 @@ public class SessionLock
       else
       {
         while(!owner && this.exclusive)
-          LOCK.wait();
+          changed.await();
 
         this.shared++;
       }
     }
+    finally
+    {
+      LOCK.unlock();
+    }
   }
 
 
@@ -71,7 +80,9 @@ public class SessionLock
   {
     long thread = Thread.currentThread().getId();
 
-    synchronized(LOCK)
+    LOCK.lock();
+
+    try
     {
       if (exclusive && this.thread != thread)
         throw new Exception("Thread "+thread+" cannot release session lock owned by "+this.thread);
@@ -89,7 +100,11 @@ public class SessionLock
       }
 
       this.shared -= shared;
-      LOCK.notifyAll();
+      changed.signalAll();
+    }
+    finally
+    {
+      LOCK.unlock();
     }
   }
 
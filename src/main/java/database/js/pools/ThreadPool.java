@@ -12,23 +12,99 @@
 
 package database.js.pools;
 
+import java.util.Collection;
+import java.lang.reflect.Method;
+import java.util.logging.Logger;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ExecutorService;
-
-
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ *
+ * Named pools of workers, one per kind of traffic, so that a stalled
+ * database cannot starve the static content or the admin interface.
+ * A pool accepts at most threads + queue tasks. Beyond that, submit
+ * returns false, and the caller is expected to turn the work away.
+ *
+ * With topology.executor = virtual, each task gets its own virtual thread,
+ * and the bound only limits the number of tasks in flight. Virtual threads
+ * are looked up at runtime, so the code still builds and runs on JDK's
+ * without them.
+ *
+ */
 public class ThreadPool
 {
+  private final String name;
   private final int threads;
-  private static ExecutorService workers = null;
+  private final int capacity;
+  private final boolean virtual;
+  private final ExecutorService workers;
+
+  private final AtomicInteger queue = new AtomicInteger(0);
+  private final AtomicLong rejected = new AtomicLong(0);
+
+  private final static Logger logger = Logger.getLogger("internal");
+
+  private final static ConcurrentHashMap<String,ThreadPool> pools =
+    new ConcurrentHashMap<String,ThreadPool>();
+
 
-  private static int queue = 0;
-  private static final Object LOCK = new Object();
+  /**
+   *
+   * Returns the pool with the given name. It is created on first use.
+   * A negative queue means no bound.
+   *
+   */
+  public static ThreadPool get(String name, int threads, int queue, boolean virtual)
+  {
+    ThreadPool pool = pools.get(name);
+    if (pool != null) return(pool);
+
+    return(pools.computeIfAbsent(name,(key) -> new ThreadPool(name,threads,queue,virtual)));
+  }
+
+
+  public static Collection<ThreadPool> pools()
+  {
+    return(pools.values());
+  }
 
 
-  public ThreadPool(int threads)
+  private ThreadPool(String name, int threads, int queue, boolean virtual)
   {
-    init(threads);
+    ExecutorService workers = null;
+
+    if (virtual)
+    {
+      try
+      {
+        Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        workers = (ExecutorService) method.invoke(null);
+      }
+      catch (Exception e)
+      {
+        virtual = false;
+        logger.warning("Virtual threads not supported by this JVM, using "+threads+" platform threads");
+      }
+    }
+
+    if (workers == null)
+      workers = Executors.newFixedThreadPool(threads);
+
+    this.name = name;
     this.threads = threads;
+    this.workers = workers;
+    this.virtual = virtual;
+    this.capacity = queue < 0 ? Integer.MAX_VALUE : threads + queue;
+  }
+
+
+  public String name()
+  {
+    return(name);
   }
 
 
@@ -38,45 +114,72 @@ public class ThreadPool
   }
 
 
-  public void done()
+  public boolean virtual()
   {
-    synchronized(LOCK)
-     {queue--;}
+    return(virtual);
   }
 
 
   public boolean full()
   {
-    return(queue > threads);
+    return(queue.get() >= capacity);
   }
 
 
   public int size()
   {
-    synchronized(LOCK)
-    {return(queue);}
+    return(queue.get());
   }
 
 
-  private synchronized void init(int threads)
+  public long rejected()
   {
-    if (workers == null)
-      workers = Executors.newFixedThreadPool(threads);
+    return(rejected.get());
   }
 
 
   public static void shutdown()
   {
-    if (workers != null)
-      workers.shutdownNow();
+    for(ThreadPool pool : pools.values())
+      pool.workers.shutdownNow();
   }
 
 
-  public void submit(Runnable task)
+  /**
+   *
+   * Returns false, without running the task, if the pool is saturated
+   *
+   */
+  public boolean submit(Runnable task)
   {
-    synchronized(LOCK)
-      {queue++;}
+    if (queue.incrementAndGet() > capacity)
+    {
+      queue.decrementAndGet();
+      rejected.incrementAndGet();
+      return(false);
+    }
+
+    try
+    {
+      workers.execute(() ->
+      {
+        try {task.run();}
+        finally {queue.decrementAndGet();}
+      });
+    }
+    catch (RuntimeException e)
+    {
+      queue.decrementAndGet();
+      throw e;
+    }
+
+    return(true);
+  }
+
 
-    workers.submit(task);
+  @Override
+  public String toString()
+  {
+    return(name+"[threads="+(virtual ? "virtual" : threads)+" queue="+size()+" rejected="+rejected()+"]");
   }
-}
\ No newline at end of file
+}
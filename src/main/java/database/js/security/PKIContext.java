@@ -13,6 +13,7 @@
 package database.js.security;
 
 import java.security.KeyStore;
+import javax.net.ssl.SSLEngine;
 import java.io.FileInputStream;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.KeyManager;
@@ -22,6 +23,7 @@ import java.security.cert.Certificate;
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.TrustManagerFactory;
 import java.security.cert.X509Certificate;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 public class PKIContext
@@ -32,9 +34,42 @@ public class PKIContext
   private TrustManager[] tmgrs;
   private X509Certificate[] chain;
 
+  private final int sescache;
+  private final int sestmout;
+
+  private final static AtomicLong full = new AtomicLong(0);
+  private final static AtomicLong resumed = new AtomicLong(0);
+  private final static AtomicLong elapsed = new AtomicLong(0);
+
 
   public PKIContext(Keystore identity, Keystore trust) throws Exception
   {
+    this(identity,trust,0,0,false);
+  }
+
+
+  /**
+   *
+   * cache and timeout (seconds) apply to the session caches of both the
+   * server and the client side, 0 leaves the JDK defaults. Tickets enables
+   * stateless resumption (RFC 5077, and TLS 1.3 tickets), unless the JDK
+   * properties for it are already set.
+   *
+   */
+  public PKIContext(Keystore identity, Keystore trust, int cache, int timeout, boolean tickets) throws Exception
+  {
+    this.sescache = cache;
+    this.sestmout = timeout;
+
+    if (tickets)
+    {
+      if (System.getProperty("jdk.tls.server.enableSessionTicketExtension") == null)
+        System.setProperty("jdk.tls.server.enableSessionTicketExtension","true");
+
+      if (System.getProperty("jdk.tls.client.enableSessionTicketExtension") == null)
+        System.setProperty("jdk.tls.client.enableSessionTicketExtension","true");
+    }
+
     this.setTrustStore(trust);
     this.setIdentity(identity);
   }
@@ -94,6 +129,18 @@ public class PKIContext
       ctx = SSLContext.getInstance("TLS");
       ctx.init(kmgrs,tmgrs,new java.security.SecureRandom());
 
+      if (sescache > 0)
+      {
+        ctx.getServerSessionContext().setSessionCacheSize(sescache);
+        ctx.getClientSessionContext().setSessionCacheSize(sescache);
+      }
+
+      if (sestmout > 0)
+      {
+        ctx.getServerSessionContext().setSessionTimeout(sestmout);
+        ctx.getClientSessionContext().setSessionTimeout(sestmout);
+      }
+
       for (int i = 0; i < 256; i++)
       {
         try
@@ -112,4 +159,59 @@ public class PKIContext
 
     return(ctx);
   }
-}
\ No newline at end of file
+
+
+  /**
+   *
+   * The peer is needed for the client side to find a session to resume
+   *
+   */
+  public SSLEngine createSSLEngine(String host, int port) throws Exception
+  {
+    return(getSSLContext().createSSLEngine(host,port));
+  }
+
+
+  /**
+   *
+   * Records a completed handshake. A session created before the
+   * handshake started, has been resumed.
+   *
+   */
+  public static void handshake(SSLEngine engine, long started)
+  {
+    long now = System.nanoTime();
+    long created = engine.getSession().getCreationTime();
+    long begin = System.currentTimeMillis() - (now - started) / 1000000;
+
+    if (created < begin) resumed.incrementAndGet();
+    else                 full.incrementAndGet();
+
+    elapsed.addAndGet(now - started);
+  }
+
+
+  public static long full()
+  {
+    return(full.get());
+  }
+
+
+  public static long resumed()
+  {
+    return(resumed.get());
+  }
+
+
+  /**
+   *
+   * Average handshake time in microseconds
+   *
+   */
+  public static long latency()
+  {
+    long count = full.get() + resumed.get();
+    if (count == 0) return(0);
+    return(elapsed.get() / count / 1000);
+  }
+}
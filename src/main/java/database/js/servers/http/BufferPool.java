@@ -0,0 +1,122 @@
+/*
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation.
+
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ */
+
+package database.js.servers.http;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ *
+ * Thread confined pool of direct buffers. Buffers are kept in size
+ * classes of UNIT bytes. Larger buffers are allocated, but not pooled.
+ *
+ */
+public class BufferPool
+{
+  private final ArrayDeque<ByteBuffer>[] free;
+
+  private static int max = 16;
+  private final static int CLASSES = 16;
+  private final static int UNIT = 4*1024;
+
+  private final static LongAdder hits = new LongAdder();
+  private final static LongAdder misses = new LongAdder();
+  private final static LongAdder outstanding = new LongAdder();
+
+  private final static ThreadLocal<BufferPool> pools =
+    ThreadLocal.withInitial(() -> new BufferPool());
+
+
+  public static void setMax(int max)
+  {
+    BufferPool.max = max;
+  }
+
+
+  public static BufferPool get()
+  {
+    return(pools.get());
+  }
+
+
+  public static long hits()
+  {
+    return(hits.sum());
+  }
+
+
+  public static long misses()
+  {
+    return(misses.sum());
+  }
+
+
+  public static long outstanding()
+  {
+    return(outstanding.sum());
+  }
+
+
+  @SuppressWarnings("unchecked")
+  private BufferPool()
+  {
+    this.free = new ArrayDeque[CLASSES];
+
+    for (int i = 0; i < CLASSES; i++)
+      free[i] = new ArrayDeque<ByteBuffer>();
+  }
+
+
+  public ByteBuffer lease(int size)
+  {
+    ByteBuffer buf = null;
+    int cls = (size + UNIT - 1) / UNIT - 1;
+
+    outstanding.increment();
+
+    if (cls < 0) cls = 0;
+    if (cls < CLASSES) buf = free[cls].poll();
+
+    if (buf != null)
+    {
+      hits.increment();
+      buf.clear();
+      return(buf);
+    }
+
+    misses.increment();
+
+    if (cls >= CLASSES) return(ByteBuffer.allocateDirect(size));
+    else                return(ByteBuffer.allocateDirect((cls+1)*UNIT));
+  }
+
+
+  public void release(ByteBuffer buf)
+  {
+    if (buf == null || !buf.isDirect())
+      return;
+
+    outstanding.decrement();
+
+    int size = buf.capacity();
+    int cls = size / UNIT - 1;
+
+    if (size % UNIT != 0 || cls >= CLASSES)
+      return;
+
+    if (free[cls].size() < max)
+      free[cls].push(buf);
+  }
+}
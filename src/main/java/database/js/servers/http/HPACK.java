@@ -0,0 +1,434 @@
+/*
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation.
+
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ */
+
+package database.js.servers.http;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.io.ByteArrayOutputStream;
+
+
+/**
+ *
+ * HPACK header compression (RFC 7541). The decoder keeps the dynamic table
+ * of the connection. The encoder does not index, so responses can be encoded
+ * from any thread without sharing state.
+ *
+ */
+class HPACK
+{
+  private int size = 0;
+  private int max = 4096;
+
+  private final ArrayDeque<String[]> dynamic =
+    new ArrayDeque<String[]>();
+
+  private final static String[][] STATIC =
+  {
+    null,
+    {":authority",""},
+    {":method","GET"},
+    {":method","POST"},
+    {":path","/"},
+    {":path","/index.html"},
+    {":scheme","http"},
+    {":scheme","https"},
+    {":status","200"},
+    {":status","204"},
+    {":status","206"},
+    {":status","304"},
+    {":status","400"},
+    {":status","404"},
+    {":status","500"},
+    {"accept-charset",""},
+    {"accept-encoding","gzip, deflate"},
+    {"accept-language",""},
+    {"accept-ranges",""},
+    {"accept",""},
+    {"access-control-allow-origin",""},
+    {"age",""},
+    {"allow",""},
+    {"authorization",""},
+    {"cache-control",""},
+    {"content-disposition",""},
+    {"content-encoding",""},
+    {"content-language",""},
+    {"content-length",""},
+    {"content-location",""},
+    {"content-range",""},
+    {"content-type",""},
+    {"cookie",""},
+    {"date",""},
+    {"etag",""},
+    {"expect",""},
+    {"expires",""},
+    {"from",""},
+    {"host",""},
+    {"if-match",""},
+    {"if-modified-since",""},
+    {"if-none-match",""},
+    {"if-range",""},
+    {"if-unmodified-since",""},
+    {"last-modified",""},
+    {"link",""},
+    {"location",""},
+    {"max-forwards",""},
+    {"proxy-authenticate",""},
+    {"proxy-authorization",""},
+    {"range",""},
+    {"referer",""},
+    {"refresh",""},
+    {"retry-after",""},
+    {"server",""},
+    {"set-cookie",""},
+    {"strict-transport-security",""},
+    {"transfer-encoding",""},
+    {"user-agent",""},
+    {"vary",""},
+    {"via",""},
+    {"www-authenticate",""}
+  };
+
+  private final static int[] CODES =
+  {
+    0x1ff8, 0x7fffd8, 0xfffffe2, 0xfffffe3, 0xfffffe4, 0xfffffe5, 0xfffffe6, 0xfffffe7,
+    0xfffffe8, 0xffffea, 0x3ffffffc, 0xfffffe9, 0xfffffea, 0x3ffffffd, 0xfffffeb, 0xfffffec,
+    0xfffffed, 0xfffffee, 0xfffffef, 0xffffff0, 0xffffff1, 0xffffff2, 0x3ffffffe, 0xffffff3,
+    0xffffff4, 0xffffff5, 0xffffff6, 0xffffff7, 0xffffff8, 0xffffff9, 0xffffffa, 0xffffffb,
+    0x14, 0x3f8, 0x3f9, 0xffa, 0x1ff9, 0x15, 0xf8, 0x7fa,
+    0x3fa, 0x3fb, 0xf9, 0x7fb, 0xfa, 0x16, 0x17, 0x18,
+    0x0, 0x1, 0x2, 0x19, 0x1a, 0x1b, 0x1c, 0x1d,
+    0x1e, 0x1f, 0x5c, 0xfb, 0x7ffc, 0x20, 0xffb, 0x3fc,
+    0x1ffa, 0x21, 0x5d, 0x5e, 0x5f, 0x60, 0x61, 0x62,
+    0x63, 0x64, 0x65, 0x66, 0x67, 0x68, 0x69, 0x6a,
+    0x6b, 0x6c, 0x6d, 0x6e, 0x6f, 0x70, 0x71, 0x72,
+    0xfc, 0x73, 0xfd, 0x1ffb, 0x7fff0, 0x1ffc, 0x3ffc, 0x22,
+    0x7ffd, 0x3, 0x23, 0x4, 0x24, 0x5, 0x25, 0x26,
+    0x27, 0x6, 0x74, 0x75, 0x28, 0x29, 0x2a, 0x7,
+    0x2b, 0x76, 0x2c, 0x8, 0x9, 0x2d, 0x77, 0x78,
+    0x79, 0x7a, 0x7b, 0x7ffe, 0x7fc, 0x3ffd, 0x1ffd, 0xffffffc,
+    0xfffe6, 0x3fffd2, 0xfffe7, 0xfffe8, 0x3fffd3, 0x3fffd4, 0x3fffd5, 0x7fffd9,
+    0x3fffd6, 0x7fffda, 0x7fffdb, 0x7fffdc, 0x7fffdd, 0x7fffde, 0xffffeb, 0x7fffdf,
+    0xffffec, 0xffffed, 0x3fffd7, 0x7fffe0, 0xffffee, 0x7fffe1, 0x7fffe2, 0x7fffe3,
+    0x7fffe4, 0x1fffdc, 0x3fffd8, 0x7fffe5, 0x3fffd9, 0x7fffe6, 0x7fffe7, 0xffffef,
+    0x3fffda, 0x1fffdd, 0xfffe9, 0x3fffdb, 0x3fffdc, 0x7fffe8, 0x7fffe9, 0x1fffde,
+    0x7fffea, 0x3fffdd, 0x3fffde, 0xfffff0, 0x1fffdf, 0x3fffdf, 0x7fffeb, 0x7fffec,
+    0x1fffe0, 0x1fffe1, 0x3fffe0, 0x1fffe2, 0x7fffed, 0x3fffe1, 0x7fffee, 0x7fffef,
+    0xfffea, 0x3fffe2, 0x3fffe3, 0x3fffe4, 0x7ffff0, 0x3fffe5, 0x3fffe6, 0x7ffff1,
+    0x3ffffe0, 0x3ffffe1, 0xfffeb, 0x7fff1, 0x3fffe7, 0x7ffff2, 0x3fffe8, 0x1ffffec,
+    0x3ffffe2, 0x3ffffe3, 0x3ffffe4, 0x7ffffde, 0x7ffffdf, 0x3ffffe5, 0xfffff1, 0x1ffffed,
+    0x7fff2, 0x1fffe3, 0x3ffffe6, 0x7ffffe0, 0x7ffffe1, 0x3ffffe7, 0x7ffffe2, 0xfffff2,
+    0x1fffe4, 0x1fffe5, 0x3ffffe8, 0x3ffffe9, 0xffffffd, 0x7ffffe3, 0x7ffffe4, 0x7ffffe5,
+    0xfffec, 0xfffff3, 0xfffed, 0x1fffe6, 0x3fffe9, 0x1fffe7, 0x1fffe8, 0x7ffff3,
+    0x3fffea, 0x3fffeb, 0x1ffffee, 0x1ffffef, 0xfffff4, 0xfffff5, 0x3ffffea, 0x7ffff4,
+    0x3ffffeb, 0x7ffffe6, 0x3ffffec, 0x3ffffed, 0x7ffffe7, 0x7ffffe8, 0x7ffffe9, 0x7ffffea,
+    0x7ffffeb, 0xffffffe, 0x7ffffec, 0x7ffffed, 0x7ffffee, 0x7ffffef, 0x7fffff0, 0x3ffffee,
+    0x3fffffff
+  };
+
+  private final static byte[] LENGTHS =
+  {
+    13, 23, 28, 28, 28, 28, 28, 28, 28, 24, 30, 28, 28, 30, 28, 28,
+    28, 28, 28, 28, 28, 28, 30, 28, 28, 28, 28, 28, 28, 28, 28, 28,
+    6, 10, 10, 12, 13, 6, 8, 11, 10, 10, 8, 11, 8, 6, 6, 6,
+    5, 5, 5, 6, 6, 6, 6, 6, 6, 6, 7, 8, 15, 6, 12, 10,
+    13, 6, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7,
+    7, 7, 7, 7, 7, 7, 7, 7, 8, 7, 8, 13, 19, 13, 14, 6,
+    15, 5, 6, 5, 6, 5, 6, 6, 6, 5, 7, 7, 6, 6, 6, 5,
+    6, 7, 6, 5, 5, 6, 7, 7, 7, 7, 7, 15, 11, 14, 13, 28,
+    20, 22, 20, 20, 22, 22, 22, 23, 22, 23, 23, 23, 23, 23, 24, 23,
+    24, 24, 22, 23, 24, 23, 23, 23, 23, 21, 22, 23, 22, 23, 23, 24,
+    22, 21, 20, 22, 22, 23, 23, 21, 23, 22, 22, 24, 21, 22, 23, 23,
+    21, 21, 22, 21, 23, 22, 23, 23, 20, 22, 22, 22, 23, 22, 22, 23,
+    26, 26, 20, 19, 22, 23, 22, 25, 26, 26, 26, 27, 27, 26, 24, 25,
+    19, 21, 26, 27, 27, 26, 27, 24, 21, 21, 26, 26, 28, 27, 27, 27,
+    20, 24, 20, 21, 22, 21, 21, 23, 22, 22, 25, 25, 24, 24, 26, 23,
+    26, 27, 26, 26, 27, 27, 27, 27, 27, 28, 27, 27, 27, 27, 27, 26,
+    30
+  };
+
+  private final static int[][] TREE = tree();
+
+
+  /**
+   *
+   * Decodes a complete header block into name/value pairs
+   *
+   */
+  ArrayList<String[]> decode(ByteBuffer block) throws Exception
+  {
+    ArrayList<String[]> headers = new ArrayList<String[]>();
+
+    while(block.hasRemaining())
+    {
+      int b = block.get(block.position()) & 0xFF;
+
+      if ((b & 0x80) != 0)
+      {
+        // Indexed header field
+        headers.add(entry(integer(block,7)));
+      }
+      else if ((b & 0x40) != 0)
+      {
+        // Literal with incremental indexing
+        String[] field = literal(block,6);
+        headers.add(field);
+        add(field);
+      }
+      else if ((b & 0x20) != 0)
+      {
+        // Dynamic table size update
+        int max = integer(block,5);
+
+        if (max > 4096)
+          throw new Exception("HPACK table size "+max+" exceeds settings");
+
+        this.max = max;
+        evict();
+      }
+      else
+      {
+        // Literal without indexing, or never indexed
+        headers.add(literal(block,4));
+      }
+    }
+
+    return(headers);
+  }
+
+
+  static byte[] encode(ArrayList<String[]> headers)
+  {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    for(String[] header : headers)
+    {
+      int name = 0;
+
+      for (int i = 1; i < STATIC.length; i++)
+      {
+        if (!STATIC[i][0].equals(header[0]))
+          continue;
+
+        if (STATIC[i][1].equals(header[1]))
+        {
+          name = -i;
+          break;
+        }
+
+        if (name == 0) name = i;
+      }
+
+      if (name < 0)
+      {
+        integer(out,0x80,7,-name);
+        continue;
+      }
+
+      integer(out,0x00,4,name);
+      if (name == 0) string(out,header[0]);
+      string(out,header[1]);
+    }
+
+    return(out.toByteArray());
+  }
+
+
+  private String[] entry(int index) throws Exception
+  {
+    if (index <= 0)
+      throw new Exception("Invalid HPACK index "+index);
+
+    if (index < STATIC.length)
+      return(STATIC[index]);
+
+    index -= STATIC.length;
+
+    for(String[] field : dynamic)
+    {
+      if (index-- == 0)
+        return(field);
+    }
+
+    throw new Exception("Invalid HPACK index "+(index+STATIC.length));
+  }
+
+
+  private String[] literal(ByteBuffer block, int prefix) throws Exception
+  {
+    String name = null;
+    int index = integer(block,prefix);
+
+    if (index == 0) name = string(block);
+    else            name = entry(index)[0];
+
+    return(new String[] {name,string(block)});
+  }
+
+
+  private void add(String[] field)
+  {
+    dynamic.addFirst(field);
+    size += field[0].length() + field[1].length() + 32;
+    evict();
+  }
+
+
+  private void evict()
+  {
+    while(size > max && !dynamic.isEmpty())
+    {
+      String[] field = dynamic.removeLast();
+      size -= field[0].length() + field[1].length() + 32;
+    }
+  }
+
+
+  private static int integer(ByteBuffer block, int prefix) throws Exception
+  {
+    int mask = (1 << prefix) - 1;
+    int value = block.get() & mask;
+
+    if (value < mask)
+      return(value);
+
+    int shift = 0;
+    int b = 0x80;
+
+    while((b & 0x80) != 0)
+    {
+      if (shift > 28)
+        throw new Exception("HPACK integer overflow");
+
+      b = block.get() & 0xFF;
+      value += (b & 0x7F) << shift;
+      shift += 7;
+    }
+
+    return(value);
+  }
+
+
+  private static void integer(ByteArrayOutputStream out, int flags, int prefix, int value)
+  {
+    int mask = (1 << prefix) - 1;
+
+    if (value < mask)
+    {
+      out.write(flags | value);
+      return;
+    }
+
+    out.write(flags | mask);
+    value -= mask;
+
+    while(value >= 0x80)
+    {
+      out.write((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+
+    out.write(value);
+  }
+
+
+  private static String string(ByteBuffer block) throws Exception
+  {
+    boolean huffman = (block.get(block.position()) & 0x80) != 0;
+    int len = integer(block,7);
+
+    if (len > block.remaining())
+      throw new Exception("HPACK string exceeds header block");
+
+    byte[] data = new byte[len];
+    block.get(data);
+
+    if (huffman) return(huffman(data));
+    else         return(new String(data,"ISO-8859-1"));
+  }
+
+
+  private static void string(ByteArrayOutputStream out, String str)
+  {
+    byte[] data = str.getBytes();
+    integer(out,0x00,7,data.length);
+    out.write(data,0,data.length);
+  }
+
+
+  private static String huffman(byte[] data) throws Exception
+  {
+    int node = 0;
+    StringBuilder str = new StringBuilder();
+
+    for (int i = 0; i < data.length; i++)
+    {
+      for (int bit = 7; bit >= 0; bit--)
+      {
+        node = TREE[(data[i] >> bit) & 1][node];
+
+        if (node < 0)
+        {
+          int sym = -node - 1;
+
+          if (sym == 256)
+            throw new Exception("HPACK string contains EOS");
+
+          str.append((char) sym);
+          node = 0;
+        }
+        else if (node == 0)
+        {
+          throw new Exception("Invalid HPACK huffman code");
+        }
+      }
+    }
+
+    return(str.toString());
+  }
+
+
+  /**
+   *
+   * Decoding tree. TREE[bit][node] is the next node,
+   * or -(symbol+1) when a symbol is complete.
+   *
+   */
+  private static int[][] tree()
+  {
+    int nodes = 1;
+    int[][] tree = new int[2][512];
+
+    for (int sym = 0; sym < CODES.length; sym++)
+    {
+      int node = 0;
+
+      for (int bit = LENGTHS[sym] - 1; bit >= 0; bit--)
+      {
+        int b = (CODES[sym] >>> bit) & 1;
+
+        if (bit == 0)
+        {
+          tree[b][node] = -sym - 1;
+        }
+        else
+        {
+          if (tree[b][node] == 0) tree[b][node] = nodes++;
+          node = tree[b][node];
+        }
+      }
+    }
+
+    return(tree);
+  }
+}
@@ -0,0 +1,567 @@
+/*
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation.
+
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ */
+
+package database.js.servers.http;
+
+import java.util.Arrays;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.SelectionKey;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ *
+ * HTTP/2 framing on top of a HTTPChannel (RFC 7540). Frames are read by the
+ * waiter. Each stream is turned into a HTTPRequest and processed by a HTTPWorker,
+ * so the handlers are the same as for HTTP/1.1. Streams run concurrently, and
+ * responses are sent as HEADERS and DATA frames within the flow control windows.
+ *
+ */
+class HTTP2Connection
+{
+  private int size = 0;
+  private int last = 0;
+  private int block = 0;
+  private boolean preface = false;
+  private byte[] inbound = new byte[16*1024];
+
+  private long window = 65535;
+  private int maxframe = 16384;
+  private int initwindow = 65535;
+
+  private final HPACK hpack;
+  private final SelectionKey key;
+  private final HTTPWaiter waiter;
+  private final HTTPChannel channel;
+  private final Object writer = new Object();
+
+  private final ByteArrayOutputStream headers =
+    new ByteArrayOutputStream();
+
+  private final ConcurrentHashMap<Integer,HTTP2Stream> streams =
+    new ConcurrentHashMap<Integer,HTTP2Stream>();
+
+  static final int DATA = 0x0;
+  static final int HEADERS = 0x1;
+  static final int PRIORITY = 0x2;
+  static final int RST_STREAM = 0x3;
+  static final int SETTINGS = 0x4;
+  static final int PING = 0x6;
+  static final int GOAWAY = 0x7;
+  static final int WINDOW_UPDATE = 0x8;
+  static final int CONTINUATION = 0x9;
+
+  static final int ACK = 0x1;
+  static final int PADDED = 0x8;
+  static final int END_STREAM = 0x1;
+  static final int END_HEADERS = 0x4;
+  static final int HAS_PRIORITY = 0x20;
+
+  static final int NO_ERROR = 0x0;
+  static final int PROTOCOL_ERROR = 0x1;
+  static final int INTERNAL_ERROR = 0x2;
+  static final int FLOW_CONTROL_ERROR = 0x3;
+  static final int REFUSED_STREAM = 0x7;
+
+  private final static int STREAMS = 100;
+  private final static int RECVWINDOW = 1024*1024;
+  private final static int MAXHEADERS = 64*1024;
+
+  private final static byte[] PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes();
+  private final static Logger logger = Logger.getLogger("http");
+
+
+  /**
+   *
+   * True if the data starts with the client connection preface (h2c with prior knowledge)
+   *
+   */
+  static boolean preface(ByteBuffer data)
+  {
+    if (data.remaining() < PREFACE.length)
+      return(false);
+
+    int pos = data.position();
+
+    for (int i = 0; i < PREFACE.length; i++)
+    {
+      if (data.get(pos+i) != PREFACE[i])
+        return(false);
+    }
+
+    return(true);
+  }
+
+
+  HTTP2Connection(HTTPWaiter waiter, HTTPChannel channel, SelectionKey key) throws Exception
+  {
+    this.key = key;
+    this.waiter = waiter;
+    this.channel = channel;
+    this.hpack = new HPACK();
+
+    ByteBuffer settings = ByteBuffer.allocate(12);
+
+    settings.putShort((short) 0x3).putInt(STREAMS);
+    settings.putShort((short) 0x4).putInt(RECVWINDOW);
+    settings.flip();
+
+    ByteBuffer update = ByteBuffer.allocate(4);
+    update.putInt(RECVWINDOW - 65535).flip();
+
+    frame(SETTINGS,0,0,settings);
+    frame(WINDOW_UPDATE,0,0,update);
+  }
+
+
+  HTTPChannel channel()
+  {
+    return(channel);
+  }
+
+
+  boolean active()
+  {
+    return(streams.size() > 0);
+  }
+
+
+  /**
+   *
+   * Called by the waiter with whatever was read from the connection
+   *
+   */
+  void read(ByteBuffer data) throws Exception
+  {
+    int read = data.remaining();
+
+    if (size + read > inbound.length)
+      inbound = Arrays.copyOf(inbound,Math.max(2*inbound.length,size+read));
+
+    data.get(inbound,size,read);
+    size += read;
+
+    int pos = 0;
+
+    if (!preface)
+    {
+      if (size < PREFACE.length) return;
+
+      if (!preface(ByteBuffer.wrap(inbound,0,size)))
+        throw new Exception("Invalid HTTP/2 connection preface");
+
+      preface = true;
+      pos = PREFACE.length;
+    }
+
+    while(size - pos >= 9)
+    {
+      int len = ((inbound[pos] & 0xFF) << 16) | ((inbound[pos+1] & 0xFF) << 8) | (inbound[pos+2] & 0xFF);
+
+      if (len > 16384)
+      {
+        goaway(PROTOCOL_ERROR);
+        throw new Exception("HTTP/2 frame of "+len+" bytes exceeds max frame size");
+      }
+
+      if (size - pos < 9 + len)
+        break;
+
+      int type = inbound[pos+3] & 0xFF;
+      int flags = inbound[pos+4] & 0xFF;
+      int stream = ByteBuffer.wrap(inbound,pos+5,4).getInt() & 0x7FFFFFFF;
+
+      received(type,flags,stream,ByteBuffer.wrap(inbound,pos+9,len).slice());
+      pos += 9 + len;
+    }
+
+    size -= pos;
+    System.arraycopy(inbound,pos,inbound,0,size);
+  }
+
+
+  private void received(int type, int flags, int stream, ByteBuffer payload) throws Exception
+  {
+    if (block != 0 && type != CONTINUATION)
+    {
+      goaway(PROTOCOL_ERROR);
+      throw new Exception("HTTP/2 header block interrupted by frame type "+type);
+    }
+
+    switch(type)
+    {
+      case DATA:
+        data(flags,stream,unpad(flags,payload));
+        break;
+
+      case HEADERS:
+        payload = unpad(flags,payload);
+        if ((flags & HAS_PRIORITY) != 0) payload.position(payload.position()+5);
+        headers(flags,stream,payload);
+        break;
+
+      case CONTINUATION:
+        if (stream != block) {goaway(PROTOCOL_ERROR); throw new Exception("Unexpected CONTINUATION frame");}
+        headers(flags,stream,payload);
+        break;
+
+      case RST_STREAM:
+        HTTP2Stream reset = streams.remove(stream);
+        if (reset != null) reset.cancel();
+        break;
+
+      case SETTINGS:
+        if ((flags & ACK) == 0) settings(payload);
+        break;
+
+      case PING:
+        if ((flags & ACK) == 0) frame(PING,ACK,0,copy(payload));
+        break;
+
+      case GOAWAY:
+        logger.fine("HTTP/2 client sent GOAWAY");
+        if (streams.isEmpty()) channel.failed();
+        break;
+
+      case WINDOW_UPDATE:
+        update(stream,payload.getInt() & 0x7FFFFFFF);
+        break;
+
+      default:
+        // PRIORITY and unknown frames are ignored
+        break;
+    }
+  }
+
+
+  private void settings(ByteBuffer payload) throws Exception
+  {
+    while(payload.remaining() >= 6)
+    {
+      int id = payload.getShort() & 0xFFFF;
+      int value = payload.getInt();
+
+      switch(id)
+      {
+        case 0x4:
+          if (value < 0) {goaway(FLOW_CONTROL_ERROR); throw new Exception("Invalid initial window size");}
+          synchronized(this)
+          {
+            for(HTTP2Stream stream : streams.values())
+              stream.window(value - initwindow);
+
+            initwindow = value;
+            this.notifyAll();
+          }
+          break;
+
+        case 0x5:
+          maxframe = value;
+          break;
+      }
+    }
+
+    frame(SETTINGS,ACK,0,ByteBuffer.allocate(0));
+  }
+
+
+  private void headers(int flags, int stream, ByteBuffer payload) throws Exception
+  {
+    if (headers.size() + payload.remaining() > MAXHEADERS)
+    {
+      goaway(PROTOCOL_ERROR);
+      throw new Exception("HTTP/2 header block too large");
+    }
+
+    headers.write(payload.array(),payload.arrayOffset()+payload.position(),payload.remaining());
+
+    if (block == 0)
+    {
+      block = stream;
+
+      // END_STREAM only appears on the HEADERS frame itself
+      if (!streams.containsKey(stream))
+      {
+        if (stream % 2 == 0 || stream <= last)
+        {
+          goaway(PROTOCOL_ERROR);
+          throw new Exception("Invalid HTTP/2 stream id "+stream);
+        }
+
+        last = stream;
+        streams.put(stream,new HTTP2Stream(this,stream,initwindow));
+      }
+
+      streams.get(stream).ended((flags & END_STREAM) != 0);
+    }
+
+    if ((flags & END_HEADERS) == 0)
+      return;
+
+    ArrayList<String[]> fields = hpack.decode(ByteBuffer.wrap(headers.toByteArray()));
+
+    block = 0;
+    headers.reset();
+
+    HTTP2Stream http2 = streams.get(stream);
+    http2.headers(fields);
+
+    if (streams.size() > STREAMS)
+    {
+      streams.remove(stream);
+      reset(stream,REFUSED_STREAM);
+      return;
+    }
+
+    if (http2.ended()) submit(http2);
+  }
+
+
+  private void data(int flags, int stream, ByteBuffer payload) throws Exception
+  {
+    HTTP2Stream http2 = streams.get(stream);
+    int len = payload.remaining();
+
+    if (len > 0)
+    {
+      ByteBuffer update = ByteBuffer.allocate(4);
+      update.putInt(len).flip();
+      frame(WINDOW_UPDATE,0,0,update);
+    }
+
+    if (http2 == null)
+      return;
+
+    http2.body(payload);
+
+    if ((flags & END_STREAM) == 0)
+    {
+      if (len > 0)
+      {
+        ByteBuffer update = ByteBuffer.allocate(4);
+        update.putInt(len).flip();
+        frame(WINDOW_UPDATE,0,stream,update);
+      }
+
+      return;
+    }
+
+    http2.ended(true);
+    submit(http2);
+  }
+
+
+  private void submit(HTTP2Stream stream) throws Exception
+  {
+    HTTPRequest request = new HTTPRequest(waiter,channel,key,stream);
+
+    if (!request.add(stream.request()))
+    {
+      streams.remove(stream.id());
+      reset(stream.id(),PROTOCOL_ERROR);
+      return;
+    }
+
+    logger.finest("HTTP/2 stream "+stream.id()+" "+request.path()+" submit");
+    HTTPWorker.submit(request);
+  }
+
+
+  private void update(int stream, int increment) throws Exception
+  {
+    synchronized(this)
+    {
+      if (stream == 0)
+      {
+        window += increment;
+      }
+      else
+      {
+        HTTP2Stream http2 = streams.get(stream);
+        if (http2 != null) http2.window(increment);
+      }
+
+      this.notifyAll();
+    }
+  }
+
+
+  /**
+   *
+   * Sends DATA frames for a stream as the flow control windows allow
+   *
+   */
+  void data(HTTP2Stream stream, ByteBuffer data, boolean end) throws Exception
+  {
+    boolean empty = !data.hasRemaining();
+    int timeout = channel.config().getHTTP().timeout;
+
+    while(data.hasRemaining())
+    {
+      int len = 0;
+
+      synchronized(this)
+      {
+        long wait = System.currentTimeMillis();
+
+        while(!stream.cancelled() && (window <= 0 || stream.window() <= 0))
+        {
+          if (System.currentTimeMillis() - wait > timeout)
+            throw new Exception("HTTP/2 flow control window not opened by client");
+
+          this.wait(timeout/4);
+        }
+
+        if (stream.cancelled())
+          return;
+
+        len = (int) Math.min(Math.min(window,stream.window()),Math.min(maxframe,data.remaining()));
+
+        window -= len;
+        stream.window(-len);
+      }
+
+      ByteBuffer frame = data.duplicate();
+      frame.limit(frame.position()+len);
+      data.position(data.position()+len);
+
+      int flags = 0;
+      if (end && !data.hasRemaining()) flags = END_STREAM;
+
+      frame(DATA,flags,stream.id(),frame);
+    }
+
+    if (end && empty && !stream.cancelled())
+      frame(DATA,END_STREAM,stream.id(),data);
+
+    if (end) closed(stream);
+  }
+
+
+  /**
+   *
+   * Sends the header block of a response as HEADERS and CONTINUATION frames
+   *
+   */
+  void headers(HTTP2Stream stream, byte[] block, boolean end) throws Exception
+  {
+    if (stream.cancelled())
+      return;
+
+    int pos = 0;
+    int type = HEADERS;
+
+    do
+    {
+      int len = Math.min(maxframe,block.length-pos);
+
+      int flags = 0;
+      if (pos + len == block.length) flags |= END_HEADERS;
+      if (end && type == HEADERS) flags |= END_STREAM;
+
+      frame(type,flags,stream.id(),ByteBuffer.wrap(block,pos,len));
+
+      pos += len;
+      type = CONTINUATION;
+    }
+    while(pos < block.length);
+
+    if (end) closed(stream);
+  }
+
+
+  void reset(int stream, int error) throws Exception
+  {
+    ByteBuffer payload = ByteBuffer.allocate(4);
+    payload.putInt(error).flip();
+    frame(RST_STREAM,0,stream,payload);
+  }
+
+
+  void closed(HTTP2Stream stream)
+  {
+    streams.remove(stream.id());
+  }
+
+
+  private void goaway(int error)
+  {
+    try
+    {
+      ByteBuffer payload = ByteBuffer.allocate(8);
+      payload.putInt(last).putInt(error).flip();
+      frame(GOAWAY,0,0,payload);
+    }
+    catch (Exception e)
+    {
+      logger.log(Level.FINE,e.getMessage(),e);
+    }
+  }
+
+
+  /**
+   *
+   * Writes one frame. Frames from different streams must not be mixed up,
+   * so writes are serialized. Workers wait for parked output to drain before
+   * taking the lock. The waiter never waits, since it is the one that drains.
+   *
+   */
+  private void frame(int type, int flags, int stream, ByteBuffer payload) throws Exception
+  {
+    boolean waiter = Thread.currentThread() instanceof HTTPWaiter;
+    if (!waiter) channel.drain();
+
+    ByteBuffer head = ByteBuffer.allocate(9);
+    int len = payload.remaining();
+
+    head.put((byte) (len >>> 16));
+    head.put((byte) (len >>> 8));
+    head.put((byte) len);
+    head.put((byte) type);
+    head.put((byte) flags);
+    head.putInt(stream);
+    head.flip();
+
+    synchronized(writer)
+    {channel.write(new ByteBuffer[] {head,payload},false);}
+  }
+
+
+  private ByteBuffer copy(ByteBuffer data)
+  {
+    ByteBuffer copy = ByteBuffer.allocate(data.remaining());
+    copy.put(data).flip();
+    return(copy);
+  }
+
+
+  private ByteBuffer unpad(int flags, ByteBuffer payload) throws Exception
+  {
+    if ((flags & PADDED) == 0)
+      return(payload);
+
+    int pad = payload.get() & 0xFF;
+
+    if (pad > payload.remaining())
+    {
+      goaway(PROTOCOL_ERROR);
+      throw new Exception("HTTP/2 padding exceeds frame");
+    }
+
+    payload.limit(payload.limit()-pad);
+    return(payload);
+  }
+}
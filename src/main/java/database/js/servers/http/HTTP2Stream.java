@@ -0,0 +1,238 @@
+/*
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation.
+
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ */
+
+package database.js.servers.http;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.io.ByteArrayOutputStream;
+
+
+/**
+ *
+ * A single HTTP/2 stream. The request is presented to the handlers in
+ * HTTP/1.1 form, and the HTTP/1.1 response is translated back into frames.
+ *
+ */
+class HTTP2Stream
+{
+  private final int id;
+  private long window;
+  private boolean ended;
+  private boolean cancelled;
+  private final HTTP2Connection conn;
+
+  private String path = null;
+  private String method = null;
+  private String authority = null;
+
+  private final ByteArrayOutputStream body =
+    new ByteArrayOutputStream();
+
+  private final LinkedHashMap<String,String> headers =
+    new LinkedHashMap<String,String>();
+
+  private final static String EOL = "\r\n";
+
+
+  HTTP2Stream(HTTP2Connection conn, int id, int window)
+  {
+    this.id = id;
+    this.conn = conn;
+    this.window = window;
+  }
+
+
+  int id()
+  {
+    return(id);
+  }
+
+
+  long window()
+  {
+    return(window);
+  }
+
+
+  void window(long delta)
+  {
+    window += delta;
+  }
+
+
+  boolean ended()
+  {
+    return(ended);
+  }
+
+
+  void ended(boolean ended)
+  {
+    this.ended = ended;
+  }
+
+
+  boolean cancelled()
+  {
+    return(cancelled);
+  }
+
+
+  void cancel()
+  {
+    cancelled = true;
+  }
+
+
+  void headers(ArrayList<String[]> fields)
+  {
+    for(String[] field : fields)
+    {
+      String name = field[0];
+      String value = field[1];
+
+      switch(name)
+      {
+        case ":path"      : path = value; break;
+        case ":method"    : method = value; break;
+        case ":authority" : authority = value; break;
+
+        default:
+          if (name.startsWith(":")) break;
+          name = canonical(name);
+
+          String prev = headers.get(name);
+
+          if (prev == null)               headers.put(name,value);
+          else if (name.equals("Cookie")) headers.put(name,prev+"; "+value);
+          else                            headers.put(name,prev+", "+value);
+      }
+    }
+  }
+
+
+  void body(ByteBuffer data)
+  {
+    body.write(data.array(),data.arrayOffset()+data.position(),data.remaining());
+  }
+
+
+  /**
+   *
+   * The request in HTTP/1.1 form
+   *
+   */
+  byte[] request()
+  {
+    String head = method + " " + path + " HTTP/2" + EOL;
+
+    if (authority != null && !headers.containsKey("Host"))
+      head += "Host: " + authority + EOL;
+
+    for(String name : headers.keySet())
+    {
+      if (name.equals("Content-Length")) continue;
+      head += name + ": " + headers.get(name) + EOL;
+    }
+
+    head += "Content-Length: " + body.size() + EOL + EOL;
+
+    byte[] header = head.getBytes();
+    byte[] request = new byte[header.length + body.size()];
+
+    System.arraycopy(header,0,request,0,header.length);
+    System.arraycopy(body.toByteArray(),0,request,header.length,body.size());
+
+    return(request);
+  }
+
+
+  void respond(HTTPResponse response) throws Exception
+  {
+    ByteBuffer body = response.payload();
+    boolean empty = !body.hasRemaining();
+
+    headers(response,empty);
+    if (!empty) data(body,true);
+  }
+
+
+  void headers(HTTPResponse response, boolean end) throws Exception
+  {
+    String[] lines = response.header().split(EOL);
+    ArrayList<String[]> fields = new ArrayList<String[]>();
+
+    String status = lines[0].split(" ")[1];
+    fields.add(new String[] {":status",status});
+
+    for (int i = 1; i < lines.length; i++)
+    {
+      int pos = lines[i].indexOf(':');
+      if (pos <= 0) continue;
+
+      String name = lines[i].substring(0,pos).trim().toLowerCase();
+      String value = lines[i].substring(pos+1).trim();
+
+      // Connection specific headers are not allowed in HTTP/2
+      switch(name)
+      {
+        case "connection"        : continue;
+        case "keep-alive"        : continue;
+        case "upgrade"           : continue;
+        case "proxy-connection"  : continue;
+        case "transfer-encoding" : continue;
+      }
+
+      fields.add(new String[] {name,value});
+    }
+
+    conn.headers(this,HPACK.encode(fields),end);
+  }
+
+
+  void data(ByteBuffer data, boolean end) throws Exception
+  {
+    conn.data(this,data,end);
+  }
+
+
+  void reset()
+  {
+    try
+    {
+      cancel();
+      conn.closed(this);
+      conn.reset(id,HTTP2Connection.INTERNAL_ERROR);
+    }
+    catch (Exception e)
+    {
+      conn.channel().failed();
+    }
+  }
+
+
+  private static String canonical(String name)
+  {
+    char[] chars = name.toCharArray();
+    boolean upper = true;
+
+    for (int i = 0; i < chars.length; i++)
+    {
+      if (upper) chars[i] = Character.toUpperCase(chars[i]);
+      upper = chars[i] == '-';
+    }
+
+    return(new String(chars));
+  }
+}
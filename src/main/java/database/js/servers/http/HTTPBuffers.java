@@ -62,15 +62,17 @@ class HTTPBuffers
 
   public void alloc(boolean free) throws Exception
   {
-    if (free) done();
+    if (free) release(done());
     alloc();
   }
 
 
   public void alloc() throws Exception
   {
-    this.data = ByteBuffer.allocateDirect(size);
-    if (ssl) this.sslb = ByteBuffer.allocateDirect(psize);
+    BufferPool pool = BufferPool.get();
+
+    this.data = pool.lease(size);
+    if (ssl) this.sslb = pool.lease(psize);
 
     if (data == null || (ssl & sslb == null))
       throw new Exception("Unable to allocate ByteBuffer");
@@ -79,18 +81,37 @@ class HTTPBuffers
 
   public void handshake() throws Exception
   {
-    this.data = ByteBuffer.allocateDirect(asize);
-    this.send = ByteBuffer.allocateDirect(psize);
-    this.recv = ByteBuffer.allocateDirect(psize);
+    BufferPool pool = BufferPool.get();
+
+    this.data = pool.lease(asize);
+    this.send = pool.lease(psize);
+    this.recv = pool.lease(psize);
 
     if (data == null || send == null || recv == null)
       throw new Exception("Unable to allocate ByteBuffer");
   }
 
 
+  public ByteBuffer lease(int size)
+  {
+    return(BufferPool.get().lease(size));
+  }
+
+
+  public void release(ByteBuffer buf)
+  {
+    BufferPool.get().release(buf);
+  }
+
+
   public ByteBuffer done()
   {
     ByteBuffer data = this.data;
+    BufferPool pool = BufferPool.get();
+
+    pool.release(sslb);
+    pool.release(send);
+    pool.release(recv);
 
     this.data = null;
     this.sslb = null;
@@ -99,4 +120,4 @@ class HTTPBuffers
 
     return(data);
   }
-}
\ No newline at end of file
+}
@@ -14,7 +14,9 @@ package database.js.servers.http;
 
 import java.net.Socket;
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import database.js.config.Config;
@@ -22,6 +24,7 @@ import database.js.servers.Server;
 import java.net.InetSocketAddress;
 import database.js.pools.ThreadPool;
 import javax.net.ssl.SSLEngineResult;
+import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 import database.js.security.PKIContext;
 import java.nio.channels.ClosedChannelException;
@@ -31,10 +34,14 @@ import javax.net.ssl.SSLEngineResult.HandshakeStatus;
 public class HTTPChannel
 {
   private int attempt;
-  private long touched;
+  private long parked;
+  private long started;
+  private volatile long touched;
+  private boolean busy;
   private boolean stayalive;
   private boolean permanent;
   private boolean connected;
+  private boolean handshaking;
 
   private final boolean ssl;
   private final boolean admin;
@@ -42,11 +49,24 @@ public class HTTPChannel
 
   private final Server server;
   private final Config config;
-  private final SSLEngine engine;
+  private SSLEngine engine;
   private final ThreadPool workers;
   private final HTTPBuffers buffers;
   private final SocketChannel channel;
 
+  private SelectionKey key = null;
+  private ByteBuffer pending = null;
+  private HTTP2Connection http2 = null;
+
+  private final ArrayDeque<HTTPRequest> pipeline =
+    new ArrayDeque<HTTPRequest>();
+
+  private final ArrayDeque<ByteBuffer> outbound =
+    new ArrayDeque<ByteBuffer>();
+
+  private final static int MAXPARKED = 1024*1024;
+  private final static ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
   private final static Logger logger = Logger.getLogger("http");
 
 
@@ -101,19 +121,26 @@ public class HTTPChannel
     {
       this.engine = null;
       this.buffers = new HTTPBuffers();
-      channel.socket().setSendBufferSize(buffers.size());
       channel.socket().setReceiveBufferSize(buffers.size());
     }
     else
     {
       PKIContext pki = config.getPKIContext();
-      this.engine = pki.getSSLContext().createSSLEngine();
+      InetSocketAddress peer = (InetSocketAddress) channel.getRemoteAddress();
 
+      this.handshaking = true;
+      this.engine = pki.createSSLEngine(peer.getHostString(),peer.getPort());
       this.engine.setUseClientMode(false);
       this.engine.setNeedClientAuth(admin);
       this.buffers = new HTTPBuffers(appsize(),packsize());
 
-      channel.socket().setSendBufferSize(packsize());
+      if (!admin && config.getHTTP().http2)
+      {
+        SSLParameters params = engine.getSSLParameters();
+        params.setApplicationProtocols(new String[] {"h2","http/1.1"});
+        engine.setSSLParameters(params);
+      }
+
       channel.socket().setReceiveBufferSize(packsize());
     }
   }
@@ -195,6 +222,48 @@ public class HTTPChannel
   }
 
 
+  /**
+   *
+   * Called by the waiter when the channel is registered. From then on,
+   * data that cannot be written right away is parked, and written by
+   * the waiter when the socket becomes writable.
+   *
+   */
+  void register(SelectionKey key)
+  {
+    this.key = key;
+  }
+
+
+  /**
+   *
+   * True if the client must speak HTTP/2. Either negotiated through
+   * ALPN, or a plain connection that starts with the HTTP/2 preface.
+   *
+   */
+  boolean http2(ByteBuffer data) throws Exception
+  {
+    if (admin || !config.getHTTP().http2)
+      return(false);
+
+    if (ssl) return("h2".equals(engine.getApplicationProtocol()));
+    else     return(HTTP2Connection.preface(data));
+  }
+
+
+  HTTP2Connection http2()
+  {
+    return(http2);
+  }
+
+
+  HTTP2Connection http2(HTTP2Connection http2)
+  {
+    this.http2 = http2;
+    return(http2);
+  }
+
+
   void failed()
   {
     try {channel.close();}
@@ -202,12 +271,52 @@ public class HTTPChannel
   }
 
 
+  boolean handshaking()
+  {
+    return(handshaking);
+  }
+
+
   public boolean connected()
   {
     return(connected);
   }
 
 
+  /**
+   *
+   * Requests are processed one at a time per connection, to keep
+   * the responses in order. Returns true if the request can be
+   * processed right away, otherwise it is queued.
+   *
+   */
+  synchronized boolean enqueue(HTTPRequest request)
+  {
+    if (!busy)
+    {
+      busy = true;
+      return(true);
+    }
+
+    pipeline.add(request);
+    return(false);
+  }
+
+
+  /**
+   *
+   * Called when a response has been sent. Returns the next
+   * pipelined request, if any.
+   *
+   */
+  synchronized HTTPRequest dequeue()
+  {
+    HTTPRequest next = pipeline.poll();
+    if (next == null) busy = false;
+    return(next);
+  }
+
+
   public void permanent()
   {
     permanent = true;
@@ -217,6 +326,7 @@ public class HTTPChannel
 
   public boolean stayalive()
   {
+    if (http2 != null && http2.active()) return(true);
     return(stayalive);
   }
 
@@ -243,6 +353,10 @@ public class HTTPChannel
 
     if (ssl)
     {
+      // Sessions are cached by peer, so they can be resumed on reconnect
+      this.engine = config.getPKIContext().createSSLEngine(host,port);
+      this.engine.setUseClientMode(true);
+
       this.accept();
       Thread.sleep(1);
     }
@@ -299,7 +413,7 @@ public class HTTPChannel
 
       if (read <= 0)
       {
-        buffers.done();
+        buffers.release(buffers.done());
         return(null);
       }
 
@@ -311,7 +425,7 @@ public class HTTPChannel
     }
     catch (Exception e)
     {
-      buffers.done();
+      buffers.release(buffers.done());
       String msg = e.getMessage();
       if (msg == null) msg = "unknown";
       if (!msg.equals("Connection reset")) throw e;
@@ -327,12 +441,22 @@ public class HTTPChannel
       buffers.alloc();
       buffers.sslb.clear();
 
+      if (pending != null)
+      {
+        // A partial record from the previous read, or what followed the handshake
+        if (pending.remaining() > buffers.sslb.remaining())
+          buffers.sslb = enlarge(buffers.sslb,pending.remaining()+packsize());
+
+        buffers.sslb.put(pending);
+        pending = null;
+      }
+
       int read = channel.read(buffers.sslb);
       logger.finer("Read "+read+" bytes");
 
-      if (read <= 0)
+      if (read < 0 || buffers.sslb.position() == 0)
       {
-        buffers.done();
+        buffers.release(buffers.done());
         return(null);
       }
 
@@ -351,12 +475,13 @@ public class HTTPChannel
             break;
 
           case BUFFER_UNDERFLOW:
-            if (buffers.sslb.limit() < packsize())
-              buffers.sslb = enlarge(buffers.sslb,packsize());
+            // Incomplete record, wait for the rest
+            pending = ByteBuffer.allocate(buffers.sslb.remaining());
+            pending.put(buffers.sslb).flip();
             break;
 
           case CLOSED:
-            buffers.done();
+            buffers.release(buffers.done());
             return(null);
         }
       }
@@ -364,7 +489,7 @@ public class HTTPChannel
     catch (Exception e)
     {
       handle(e);
-      buffers.done();
+      buffers.release(buffers.done());
       return(null);
     }
 
@@ -373,60 +498,62 @@ public class HTTPChannel
   }
 
 
-  public void write(ByteBuffer buf) throws Exception
+  public void write(byte[] data) throws Exception
   {
-    int read = buf.remaining();
-    byte[] data = new byte[read]; buf.get(data);
-    write(data);
+    write(new ByteBuffer[] {ByteBuffer.wrap(data)});
   }
 
 
-  public void write(byte[] data) throws Exception
+  public void write(ByteBuffer buf) throws Exception
   {
-    int wrote = 0;
-    buffers.alloc();
-    Socket socket = channel.socket();
-    int max = buffers.data.capacity();
-
-    int size = data.length;
-    int bsize = buffers.data.capacity();
-
-    while(wrote < size)
-    {
-      int chunk = bsize;
+    write(new ByteBuffer[] {buf});
+  }
 
-      if (chunk > size - wrote)
-        chunk = size - wrote;
 
-      if (chunk > max)
-        chunk = max;
+  /**
+   *
+   * Gathering write. Plain connections write the buffers as is,
+   * ssl connections wrap them directly into network packets.
+   *
+   */
+  public void write(ByteBuffer[] data) throws Exception
+  {
+    write(data,true);
+  }
 
-      buffers.data.put(data,wrote,chunk);
-      buffers.data.flip();
 
-      if (ssl) writessl();
-      else     writeplain();
+  /**
+   *
+   * Unless wait is set, the write returns even if the
+   * connection has too much parked output.
+   *
+   */
+  void write(ByteBuffer[] data, boolean wait) throws Exception
+  {
+    Socket socket = channel.socket();
 
-      if (!socket.isClosed())
-      {
-        try {socket.getOutputStream().flush();}
-        catch (Exception e) {;}
-      }
+    if (ssl) writessl(data,wait);
+    else     writeplain(data,wait);
 
-      wrote += chunk;
-      buffers.alloc(true);
+    if (!socket.isClosed())
+    {
+      try {socket.getOutputStream().flush();}
+      catch (Exception e) {;}
     }
+  }
 
-    buffers.done();
+
+  public void release(ByteBuffer buf)
+  {
+    buffers.release(buf);
   }
 
 
-  private void writeplain() throws Exception
+  private void writeplain(ByteBuffer[] data, boolean wait) throws Exception
   {
     try
     {
-      int remain = buffers.data.remaining();
-      while(remain > 0) remain -= channel.write(buffers.data);
+      send(data,false,wait);
     }
     catch (Exception e)
     {
@@ -441,34 +568,167 @@ public class HTTPChannel
   }
 
 
-  private void writessl() throws Exception
+  private void writessl(ByteBuffer[] data, boolean wait) throws Exception
   {
-    int remain = buffers.data.remaining();
+    long remain = remaining(data);
+    ByteBuffer sslb = buffers.lease(packsize());
 
-    while(remain > 0)
+    try
     {
-      buffers.sslb.clear();
-      SSLEngineResult result = engine.wrap(buffers.data,buffers.sslb);
+      while(remain > 0)
+      {
+        sslb.clear();
+        SSLEngineResult result = engine.wrap(data,sslb);
+
+        switch(result.getStatus())
+        {
+          case OK:
+            sslb.flip();
+            send(new ByteBuffer[] {sslb},true,wait);
+            remain -= result.bytesConsumed();
+            break;
+
+          case BUFFER_OVERFLOW:
+            sslb = enlarge(sslb,packsize());
+            break;
+
+          case BUFFER_UNDERFLOW:
+            throw new IllegalStateException("Unexpected behaivior");
+
+          case CLOSED:
+            logger.warning("Client closed connection");
+            return;
+        }
+      }
+    }
+    finally
+    {
+      buffers.release(sslb);
+    }
+  }
+
+
+  /**
+   *
+   * Writes as much as the socket will take. The rest is parked, and the
+   * waiter is asked to finish the write when the socket becomes writable.
+   * Parked buffers are kept as is, unless copy is set.
+   *
+   */
+  private synchronized void send(ByteBuffer[] data, boolean copy, boolean wait) throws Exception
+  {
+    long remain = remaining(data);
+
+    if (outbound.isEmpty())
+    {
+      while(remain > 0)
+      {
+        long written = channel.write(data);
+        if (written == 0 && key != null) break;
+        remain -= written;
+      }
+    }
+
+    if (remain == 0)
+      return;
+
+    for (int i = 0; i < data.length; i++)
+    {
+      ByteBuffer buf = data[i];
+      if (!buf.hasRemaining()) continue;
+
+      if (copy)
+      {
+        ByteBuffer cbuf = ByteBuffer.allocate(buf.remaining());
+        cbuf.put(buf);
+        cbuf.flip();
+        buf = cbuf;
+      }
+
+      outbound.add(buf);
+    }
+
+    parked += remain;
+    touched = System.currentTimeMillis();
+
+    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    key.selector().wakeup();
+
+    if (wait) drain();
+  }
+
+
+  /**
+   *
+   * Waits while too much data is parked. Gives up if
+   * the client does not read anything within the timeout.
+   *
+   */
+  synchronized void drain() throws Exception
+  {
+    int timeout = config.getHTTP().timeout;
+
+    while(parked > MAXPARKED)
+    {
+      if (!channel.isOpen())
+        throw new ClosedChannelException();
 
-      switch(result.getStatus())
+      if (System.currentTimeMillis() - touched > timeout)
       {
-        case OK:
-          buffers.sslb.flip();
+        failed();
+        throw new Exception("Client stopped reading, connection closed");
+      }
 
-          while(buffers.sslb.hasRemaining())
-            remain -= channel.write(buffers.sslb);
+      this.wait(timeout/4);
+    }
+  }
 
-          break;
 
-        case BUFFER_OVERFLOW:
-          buffers.sslb = enlarge(buffers.sslb,packsize());
-          break;
+  /**
+   *
+   * Called by the waiter when the socket is writable.
+   *
+   */
+  synchronized void flush()
+  {
+    try
+    {
+      ByteBuffer[] data = outbound.toArray(new ByteBuffer[0]);
+      long written = channel.write(data);
 
-        case BUFFER_UNDERFLOW:
-          buffers.done();
-          throw new IllegalStateException("Unexpected behaivior");
+      if (written > 0)
+      {
+        parked -= written;
+        touched = System.currentTimeMillis();
       }
+
+      while(!outbound.isEmpty() && !outbound.peek().hasRemaining())
+        outbound.poll();
+
+      if (outbound.isEmpty())
+        key.interestOps(SelectionKey.OP_READ);
     }
+    catch (Exception e)
+    {
+      parked = 0;
+      outbound.clear();
+
+      failed();
+      logger.fine("Client closed connection with pending output");
+    }
+
+    this.notifyAll();
+  }
+
+
+  private static long remaining(ByteBuffer[] data)
+  {
+    long remain = 0;
+
+    for (int i = 0; i < data.length; i++)
+      remain += data[i].remaining();
+
+    return(remain);
   }
 
 
@@ -495,6 +755,7 @@ public class HTTPChannel
     HandshakeStatus status = null;
 
     buffers.handshake();
+    started = System.nanoTime();
 
     try
     {
@@ -513,7 +774,7 @@ public class HTTPChannel
             {
               if (engine.isInboundDone() && engine.isOutboundDone())
               {
-                this.buffers.done();
+                buffers.release(buffers.done());
                 this.connected = true;
                 return(this.connected);
               }
@@ -535,7 +796,7 @@ public class HTTPChannel
             catch (Exception e)
             {
               handle(e);
-              this.buffers.done();
+              buffers.release(buffers.done());
               engine.closeOutbound();
               this.connected = false;
               return(this.connected);
@@ -575,7 +836,7 @@ public class HTTPChannel
             catch (Exception e)
             {
               handle(e);
-              this.buffers.done();
+              buffers.release(buffers.done());
               engine.closeOutbound();
               this.connected = false;
               return(this.connected);
@@ -649,7 +910,13 @@ public class HTTPChannel
       logger.log(Level.SEVERE,e.getMessage(),e);
     }
 
-    this.buffers.done();
+    if (buffers.recv != null)
+    {
+      buffers.recv.flip();
+      keep(buffers.recv);
+    }
+
+    buffers.release(buffers.done());
 
     if (result == null)
     {
@@ -658,10 +925,184 @@ public class HTTPChannel
     }
 
     this.connected = result.getStatus() == SSLEngineResult.Status.OK;
+    if (connected) PKIContext.handshake(engine,started);
+
     return(this.connected);
   }
 
 
+  /**
+   *
+   * Server side handshake, driven by the waiter. It goes as far as it can
+   * without blocking, and then tells the selector what it is waiting for.
+   * Delegated tasks run in the tls pool, which wakes the waiter when done.
+   * Returns true when the handshake has completed.
+   *
+   */
+  boolean handshake() throws Exception
+  {
+    SSLEngineResult result = null;
+
+    try
+    {
+      if (buffers.recv == null)
+      {
+        started = System.nanoTime();
+
+        buffers.handshake();
+        buffers.send.flip();
+        engine.beginHandshake();
+      }
+
+      while(true)
+      {
+        if (buffers.send.hasRemaining())
+        {
+          channel.write(buffers.send);
+
+          if (buffers.send.hasRemaining())
+          {
+            key.interestOps(SelectionKey.OP_WRITE);
+            return(false);
+          }
+        }
+
+        switch(engine.getHandshakeStatus())
+        {
+          case NEED_UNWRAP:
+            buffers.recv.flip();
+            result = engine.unwrap(buffers.recv,buffers.data);
+            buffers.recv.compact();
+
+            switch(result.getStatus())
+            {
+              case OK:
+                break;
+
+              case BUFFER_OVERFLOW:
+                buffers.data = enlarge(buffers.data,appsize());
+                break;
+
+              case BUFFER_UNDERFLOW:
+                if (!buffers.recv.hasRemaining())
+                  buffers.recv = enlarge(buffers.recv,packsize());
+
+                int read = channel.read(buffers.recv);
+
+                if (read < 0)
+                  throw new ClosedChannelException();
+
+                if (read == 0)
+                {
+                  key.interestOps(SelectionKey.OP_READ);
+                  return(false);
+                }
+                break;
+
+              case CLOSED:
+                throw new ClosedChannelException();
+            }
+            break;
+
+          case NEED_WRAP:
+            buffers.send.clear();
+            result = engine.wrap(EMPTY,buffers.send);
+
+            if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW)
+            {
+              buffers.send.flip();
+              buffers.send = enlarge(buffers.send,packsize());
+              buffers.send.flip();
+              continue;
+            }
+
+            buffers.send.flip();
+
+            if (result.getStatus() == SSLEngineResult.Status.CLOSED)
+            {
+              channel.write(buffers.send);
+              throw new ClosedChannelException();
+            }
+            break;
+
+          case NEED_TASK:
+            delegate();
+            return(false);
+
+          default:
+            // FINISHED or NOT_HANDSHAKING
+            buffers.recv.flip();
+            keep(buffers.recv);
+            buffers.release(buffers.done());
+
+            connected = true;
+            handshaking = false;
+            key.interestOps(SelectionKey.OP_READ);
+            PKIContext.handshake(engine,started);
+
+            return(true);
+        }
+      }
+    }
+    catch (Exception e)
+    {
+      if (!(e instanceof ClosedChannelException)) handle(e);
+      buffers.release(buffers.done());
+      failed();
+      return(false);
+    }
+  }
+
+
+  /**
+   *
+   * Whatever has been received after the handshake, is kept for the first read
+   *
+   */
+  private void keep(ByteBuffer recv)
+  {
+    if (recv == null || !recv.hasRemaining())
+      return;
+
+    pending = ByteBuffer.allocate(recv.remaining());
+    pending.put(recv).flip();
+  }
+
+
+  /**
+   *
+   * True if data was received along with the handshake, and is waiting to be read
+   *
+   */
+  boolean pending()
+  {
+    return(pending != null);
+  }
+
+
+  private void delegate()
+  {
+    key.interestOps(0);
+
+    Runnable tasks = () ->
+    {
+      Runnable task = engine.getDelegatedTask();
+
+      while(task != null)
+      {
+        task.run();
+        task = engine.getDelegatedTask();
+      }
+
+      // Writable right away, which brings the waiter back to the handshake
+      key.interestOps(SelectionKey.OP_WRITE);
+      key.selector().wakeup();
+    };
+
+    if (!workers.submit(tasks)) tasks.run();
+  }
+
+
   private void handle(Exception e)
   {
     boolean skip = false;
@@ -679,9 +1120,10 @@ public class HTTPChannel
 
     if (left < size)
     {
-      buf = ByteBuffer.allocateDirect(buf.position() + size);
+      buf = buffers.lease(buf.position() + size);
       bufc.flip();
       buf.put(bufc);
+      buffers.release(bufc);
     }
 
     return(buf);
@@ -12,6 +12,7 @@
 
 package database.js.servers.http;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
@@ -22,6 +23,7 @@ import java.nio.channels.SelectionKey;
 public class HTTPRequest
 {
   private long time = 0;
+  private int size = 0;
   private int header = -1;
   private int clength = -1;
 
@@ -36,9 +38,10 @@ public class HTTPRequest
   private final SelectionKey key;
   private final HTTPWaiter waiter;
   private final HTTPChannel channel;
+  private final HTTP2Stream stream;
 
   private byte[] body = null;
-  private byte[] request = new byte[0];
+  private byte[] request = EMPTY;
 
   private HashMap<String,String> headers =
     new HashMap<String,String>();
@@ -50,6 +53,9 @@ public class HTTPRequest
     new ArrayList<Pair<String,String>>();
 
   private final static String EOL = "\r\n";
+  private final static int PRESIZE = 64*1024*1024;
+  private final static byte[] EMPTY = new byte[0];
+  private final static byte[] CLENGTH = "content-length:".getBytes();
   private long touched = System.currentTimeMillis();
 
 
@@ -58,17 +64,28 @@ public class HTTPRequest
     this.key = null;
     this.host = host;
     this.waiter = null;
+    this.stream = null;
     this.channel = null;
     this.server = server;
     this.redirect = false;
 
-    this.add(data);
+    this.request = data;
+    this.size = data.length;
+
+    this.scan(0);
   }
 
 
   public HTTPRequest(HTTPWaiter waiter, HTTPChannel channel, SelectionKey key)
+  {
+    this(waiter,channel,key,null);
+  }
+
+
+  HTTPRequest(HTTPWaiter waiter, HTTPChannel channel, SelectionKey key, HTTP2Stream stream)
   {
     this.key = key;
+    this.stream = stream;
     this.waiter = waiter;
     this.channel = channel;
     this.host = channel.remote();
@@ -114,6 +131,9 @@ public class HTTPRequest
 
   public byte[] page()
   {
+    if (request.length != size)
+      request = Arrays.copyOf(request,size);
+
     return(request);
   }
 
@@ -127,7 +147,7 @@ public class HTTPRequest
   public byte[] body()
   {
     if (body != null) return(body);
-    int blen = request.length - this.header - 4;
+    int blen = size - this.header - 4;
 
     if (blen > 0)
     {
@@ -165,7 +185,30 @@ public class HTTPRequest
 
   public void respond(byte[] data) throws Exception
   {
-    channel.write(data);
+    if (stream != null) stream.respond(new HTTPResponse(data));
+    else                channel.write(data);
+  }
+
+  public void respond(HTTPResponse response) throws Exception
+  {
+    if (stream != null) stream.respond(response);
+    else                channel.write(response.buffers());
+  }
+
+  HTTP2Stream http2()
+  {
+    return(stream);
+  }
+
+  void failed()
+  {
+    // A failed HTTP/2 stream does not take down the connection
+    if (stream == null) channel.failed();
+  }
+
+  public HTTPStream stream(HTTPResponse response)
+  {
+    return(new HTTPStream(this,response));
   }
 
   public SelectionKey key()
@@ -183,9 +226,9 @@ public class HTTPRequest
     return(clength >= 0);
   }
 
-  boolean cancelled()
+  long started()
   {
-    return(System.currentTimeMillis() - touched > 30000);
+    return(touched);
   }
 
 
@@ -249,9 +292,14 @@ public class HTTPRequest
 
   public boolean add(ByteBuffer buf) throws Exception
   {
+    int last = size;
     int read = buf.remaining();
-    byte[] data = new byte[read]; buf.get(data);
-    return(add(data,0,data.length));
+
+    ensure(size+read);
+    buf.get(request,size,read);
+
+    size += read;
+    return(scan(last));
   }
 
 
@@ -263,16 +311,26 @@ public class HTTPRequest
 
   public boolean add(byte[] data, int pos, int len) throws Exception
   {
-    time = System.nanoTime();
-    int last = request.length;
-    byte[] request = new byte[this.request.length+len];
+    int last = size;
+
+    ensure(size+len);
+    System.arraycopy(data,pos,request,size,len);
 
-    System.arraycopy(data,pos,request,last,len);
-    System.arraycopy(this.request,0,request,0,this.request.length);
+    size += len;
+    return(scan(last));
+  }
 
-    this.request = request;
 
-    if (request.length < 8)
+  /**
+   *
+   * Only looks at the bytes from last and onwards
+   *
+   */
+  private boolean scan(int last) throws Exception
+  {
+    time = System.nanoTime();
+
+    if (size < 8)
       return(false);
 
     if (method == null)
@@ -282,10 +340,7 @@ public class HTTPRequest
       return(false);
 
     if (header < 0)
-    {
-      if (method.equals("GET")) this.bckward(last);
-      else                      this.forward(last);
-    }
+      this.forward(last);
 
     if (header < 0)
       return(false);
@@ -295,24 +350,78 @@ public class HTTPRequest
       path = getPath();
       version = getVersion();
 
-      if (method.equals("GET"))
+      if (method.equals("GET")) clength = 0;
+      else                      clength = getContentLength();
+
+      // Make room for the full body at once
+      if (clength <= PRESIZE) ensure(header + clength + 4);
+    }
+
+    return(size >= header + clength + 4);
+  }
+
+
+  /**
+   *
+   * Returns any bytes received after this request (pipelining)
+   * and strips them from the request
+   *
+   */
+  ByteBuffer excess()
+  {
+    int end = header + clength + 4;
+
+    if (size <= end)
+      return(null);
+
+    ByteBuffer excess = ByteBuffer.wrap(request,end,size-end);
+
+    size = end;
+    return(excess);
+  }
+
+
+  private void ensure(int need)
+  {
+    if (need <= request.length)
+      return;
+
+    int cap = 2 * request.length;
+    if (cap < need) cap = need;
+
+    request = Arrays.copyOf(request,cap);
+  }
+
+
+  private int getContentLength()
+  {
+    int len = CLENGTH.length;
+
+    for (int h = 0; h < header - len; h++)
+    {
+      if (request[h] != '\n')
+        continue;
+
+      int i = 0;
+
+      while(i < len && (request[h+1+i] | 0x20) == CLENGTH[i])
+        i++;
+
+      if (i < len)
+        continue;
+
+      int clength = 0;
+
+      for (int p = h+1+len; p < header && request[p] != '\r'; p++)
       {
-        clength = 0;
+        if (request[p] >= '0' && request[p] <= '9')
+          clength = 10 * clength + (request[p] - '0');
       }
-      else
-      {
-        parse();
-        String cl = headers.get("Content-Length");
 
-        if (cl == null) clength = 0;
-        else clength = Integer.parseInt(cl);
-      }
+      return(clength);
     }
 
-    if (request.length > header + clength + 4)
-      throw new Exception("Received multiple requests without client waiting for response");
-
-    return(request.length == header + clength + 4);
+    return(0);
   }
 
 
@@ -323,7 +432,7 @@ public class HTTPRequest
 
     int b = method.length()+1;
 
-    for (int i = b; i < request.length; i++)
+    for (int i = b; i < size; i++)
     {
       if (request[i] == ' ')
       {
@@ -345,7 +454,7 @@ public class HTTPRequest
 
   private String getMethod()
   {
-    for (int i = 0; i < request.length; i++)
+    for (int i = 0; i < size; i++)
     {
       if (request[i] == ' ')
         return(new String(request,0,i));
@@ -363,7 +472,7 @@ public class HTTPRequest
     int e = 0;
     int b = 2 + method.length() + path.length();
 
-    for (int h = b; h < request.length-1; h++)
+    for (int h = b; h < size-1; h++)
     {
       if (request[h] == '\r' && request[h+1] == '\n')
       {
@@ -399,7 +508,7 @@ public class HTTPRequest
     int start = 0;
     if (last > 3) start = last - 3;
 
-    for (int h = start; h < request.length-3; h++)
+    for (int h = start; h < size-3; h++)
     {
       if (request[h] == '\r' && request[h+1] == '\n' && request[h+2] == '\r' && request[h+3] == '\n')
       {
@@ -410,28 +519,10 @@ public class HTTPRequest
   }
 
 
-  /**
-   *
-   * Returns the length of the header (pos+1)
-   *
-   */
-  void bckward(int last)
-  {
-    for (int h = request.length-1; h >= 3 && h >= last-3; h--)
-    {
-      if (request[h-3] == '\r' && request[h-2] == '\n' && request[h-1] == '\r' && request[h] == '\n')
-      {
-        header = h - 3;
-        return;
-      }
-    }
-  }
-
-
   @Override
   public String toString()
   {
-    return(new String(request));
+    return(new String(request,0,size));
   }
 
 
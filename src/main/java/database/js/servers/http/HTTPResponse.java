@@ -13,17 +13,21 @@
 package database.js.servers.http;
 
 import java.util.Date;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.text.SimpleDateFormat;
 
 
 public class HTTPResponse
 {
+  private int hlen;
   private byte[] body;
   private byte[] page;
+  private ByteBuffer content;
   private String header;
   private String response;
   private String mimetype;
+  private boolean chunked;
   private boolean finished;
   private static int timeout;
 
@@ -57,11 +61,8 @@ public class HTTPResponse
     finished = true;
     this.page = data;
 
-    int hlen = hlength(data);
+    this.hlen = hlength(data);
     this.header = new String(data,0,hlen);
-
-    this.body = new byte[data.length-hlen];
-    System.arraycopy(data,hlen,body,0,body.length);
   }
 
 
@@ -72,19 +73,28 @@ public class HTTPResponse
 
     finished = true;
 
-    if (body == null)
+    if (body == null && content == null)
       body = new byte[0];
 
     if (mimetype == null)
       mimetype = "text/plain";
 
     setHeader("Content-Type",mimetype);
-    setHeader("Content-Length",body.length);
+
+    if (chunked)              setHeader("Transfer-Encoding","chunked");
+    else if (content == null) setHeader("Content-Length",body.length);
+    else                      setHeader("Content-Length",content.remaining());
 
     if (this.response == null) setResponse(200);
   }
 
 
+  void chunked()
+  {
+    this.chunked = true;
+  }
+
+
   public void setResponse(int code)
   {
     this.response = HTTPCodes.get(code);
@@ -203,6 +213,14 @@ public class HTTPResponse
   public void setBody(byte[] body)
   {
     this.body = body;
+    this.content = null;
+  }
+
+
+  public void setBody(ByteBuffer content)
+  {
+    this.body = null;
+    this.content = content;
   }
 
 
@@ -237,6 +255,20 @@ public class HTTPResponse
 
   public byte[] body()
   {
+    if (body != null)
+      return(body);
+
+    if (content != null)
+    {
+      body = new byte[content.remaining()];
+      content.duplicate().get(body);
+    }
+    else if (page != null)
+    {
+      body = new byte[page.length-hlen];
+      System.arraycopy(page,hlen,body,0,body.length);
+    }
+
     return(body);
   }
 
@@ -246,22 +278,55 @@ public class HTTPResponse
     if (!finished) finish();
     if (page != null) return(page);
 
+    byte[] body = body();
     byte[] head = header().getBytes();
-    this.page = new byte[header.length()+this.body.length];
+    this.page = new byte[head.length+body.length];
 
     System.arraycopy(head,0,page,0,head.length);
-    System.arraycopy(this.body,0,page,head.length,this.body.length);
+    System.arraycopy(body,0,page,head.length,body.length);
 
     return(page);
   }
 
 
+  /**
+   *
+   * The response as header and body, without joining them
+   *
+   */
+  public ByteBuffer[] buffers()
+  {
+    if (!finished) finish();
+
+    if (page != null)
+      return(new ByteBuffer[] {ByteBuffer.wrap(page)});
+
+    ByteBuffer head = ByteBuffer.wrap(header().getBytes());
+
+    if (content != null) return(new ByteBuffer[] {head,content.duplicate()});
+    else                 return(new ByteBuffer[] {head,ByteBuffer.wrap(body)});
+  }
+
+
+  /**
+   *
+   * The body only
+   *
+   */
+  ByteBuffer payload()
+  {
+    if (!finished) finish();
+    if (content != null) return(content.duplicate());
+    return(ByteBuffer.wrap(nvlbody()));
+  }
+
+
   private int hlength(byte[] data)
   {
     for (int h = 0; h < data.length-3; h++)
     {
       if (data[h] == '\r' && data[h+1] == '\n' && data[h+2] == '\r' && data[h+3] == '\n')
-        return(h+3);
+        return(h+4);
     }
 
     return(data.length);
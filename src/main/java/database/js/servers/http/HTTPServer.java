@@ -18,7 +18,9 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import database.js.config.Config;
 import database.js.servers.Server;
+import database.js.config.Topology;
 import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
 import java.nio.channels.Selector;
 import database.js.pools.ThreadPool;
 import java.nio.channels.SelectionKey;
@@ -30,14 +32,12 @@ import java.nio.channels.ServerSocketChannel;
 public class HTTPServer extends Thread
 {
   private final int port;
-  private final int timeout;
   private final boolean ssl;
   private final Server server;
   private final Config config;
   private final boolean admin;
   private final boolean embedded;
   private final boolean redirect;
-  private final Selector selector;
   private final ThreadPool workers;
   private final HTTPServerType type;
   private final HTTPWaiterPool waiters;
@@ -58,11 +58,10 @@ public class HTTPServer extends Thread
     this.redirect = false;
     this.embedded = embedded;
     this.config = server.config();
-    this.selector = Selector.open();
-    this.timeout = config.getHTTP().timeout;
 
     config.getPKIContext(); // Initialize ssl
     HTTPBuffers.setSize(config.getHTTP().bufsize);
+    BufferPool.setMax(config.getHTTP().bufpool);
 
     switch(type)
     {
@@ -74,10 +73,10 @@ public class HTTPServer extends Thread
 
     this.setDaemon(true);
     this.setName("HTTPServer("+type+")");
-    this.workers = new ThreadPool(config.getTopology().workers);
+    Topology topology = config.getTopology();
+    // Runs the delegated tasks of ssl handshakes
+    this.workers = ThreadPool.get("tls",Math.max(2,Topology.cores/2),topology.queue,false);
     this.waiters = new HTTPWaiterPool(server,embedded,config.getTopology().waiters);
-
-    HTTPReaper.start(logger,waiters,timeout);
   }
 
 
@@ -137,7 +136,7 @@ public class HTTPServer extends Thread
   }
 
 
-  private void select() throws Exception
+  private void select(Selector selector) throws Exception
   {
     while(selector.select() == 0)
       logger.warning("selector woke up empty handed");
@@ -157,66 +156,121 @@ public class HTTPServer extends Thread
     try
     {
       Deployment.get().deploy();
+      int acceptors = config.getTopology().acceptors;
+
       ServerSocketChannel server = ServerSocketChannel.open();
+      boolean reuse = server.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
 
-      server.configureBlocking(false);
-      server.bind(new InetSocketAddress(port));
-      server.register(selector,SelectionKey.OP_ACCEPT);
+      if (acceptors > 1 && !reuse)
+      {
+        acceptors = 1;
+        logger.warning("SO_REUSEPORT not supported, HTTPServer("+type+") runs a single acceptor");
+      }
+
+      // With SO_REUSEPORT the kernel spreads connections over the listeners
+      server = listen(server,acceptors > 1);
+
+      for (int i = 1; i < acceptors; i++)
+        new Acceptor(this,i,listen(ServerSocketChannel.open(),true)).start();
 
       state = RUNNING;
+      accept(server);
+    }
+    catch (Exception e)
+    {
+      logger.log(Level.SEVERE,e.getMessage(),e);
+    }
 
-      while(true)
+    state = STOPPED;
+    logger.info("HTTPServer("+type+") stopped");
+  }
+
+
+  private ServerSocketChannel listen(ServerSocketChannel server, boolean reuse) throws Exception
+  {
+    server.configureBlocking(false);
+    if (reuse) server.setOption(StandardSocketOptions.SO_REUSEPORT,true);
+    server.bind(new InetSocketAddress(port));
+    return(server);
+  }
+
+
+  private void accept(ServerSocketChannel server) throws Exception
+  {
+    Selector selector = Selector.open();
+    server.register(selector,SelectionKey.OP_ACCEPT);
+
+    while(true)
+    {
+      try
       {
-        try
+        select(selector);
+
+        Set<SelectionKey> selected = selector.selectedKeys();
+        Iterator<SelectionKey> iterator = selected.iterator();
+
+        while(iterator.hasNext())
         {
-          select();
+          SelectionKey key = iterator.next();
+          iterator.remove();
+
+          if (!key.isAcceptable())
+          {
+            logger.warning("Key is not acceptable");
+            continue;
+          }
 
-          Set<SelectionKey> selected = selector.selectedKeys();
-          Iterator<SelectionKey> iterator = selected.iterator();
+          SocketChannel channel = null;
 
-          while(iterator.hasNext())
+          // Take the whole backlog in one go
+          while((channel = server.accept()) != null)
           {
-            SelectionKey key = iterator.next();
-            iterator.remove();
-
-            if (key.isAcceptable())
-            {
-              SocketChannel channel = server.accept();
-              logger.finest("Incoming request "+channel.getRemoteAddress());
-
-              channel.configureBlocking(false);
-
-              if (ssl)
-              {
-                // Don't block while handshaking
-                SSLHandshake ses = new SSLHandshake(this,key,channel,admin);
-                workers.submit(ses);
-              }
-              else
-              {
-                // Overkill to use threadpool
-                HTTPChannel client = new HTTPChannel(this.server,workers,channel,ssl,admin);
-                if (client.accept()) this.assign(client);
-              }
-            }
-            else
-            {
-              logger.warning("Key is not acceptable");
-            }
+            logger.finest("Incoming request "+channel.getRemoteAddress());
+
+            channel.configureBlocking(false);
+
+            // The ssl handshake is driven by the waiter
+            HTTPChannel client = new HTTPChannel(this.server,workers,channel,ssl,admin);
+
+            if (ssl) this.assign(client);
+            else if (client.accept()) this.assign(client);
           }
         }
-        catch (Exception e)
-        {
-          logger.log(Level.SEVERE,e.getMessage(),e);
-        }
+      }
+      catch (Exception e)
+      {
+        logger.log(Level.SEVERE,e.getMessage(),e);
       }
     }
-    catch (Exception e)
+  }
+
+
+  /**
+   *
+   * Additional acceptor, with its own listening socket bound with SO_REUSEPORT.
+   * Accepted clients are handed to the waiters, as from the server itself.
+   *
+   */
+  private static class Acceptor extends Thread
+  {
+    private final HTTPServer server;
+    private final ServerSocketChannel socket;
+
+    Acceptor(HTTPServer server, int id, ServerSocketChannel socket)
     {
-      logger.log(Level.SEVERE,e.getMessage(),e);
+      this.server = server;
+      this.socket = socket;
+
+      this.setDaemon(true);
+      this.setName("HTTPAcceptor("+server.type+","+id+")");
     }
 
-    state = STOPPED;
-    logger.info("HTTPServer("+type+") stopped");
+
+    @Override
+    public void run()
+    {
+      try {server.accept(socket);}
+      catch (Exception e) {logger.log(Level.SEVERE,e.getMessage(),e);}
+    }
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,202 @@
+/*
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation.
+
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ */
+
+package database.js.servers.http;
+
+import java.util.Arrays;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.io.OutputStream;
+
+
+/**
+ *
+ * Sends a response body while it is being produced. Output is collected
+ * in chunks. A body that never fills a chunk is sent as a normal response
+ * with Content-Length. Otherwise the header goes out with the first chunk,
+ * and the body is sent using chunked transfer-encoding, or as DATA frames
+ * on HTTP/2.
+ *
+ */
+public class HTTPStream extends OutputStream
+{
+  private int pos = 0;
+  private boolean open = false;
+  private boolean closed = false;
+
+  private byte[] chunk;
+  private final HTTPRequest request;
+  private final HTTPResponse response;
+
+  private final static int CHUNK = 16*1024;
+  private final static byte[] EOL = "\r\n".getBytes();
+  private final static byte[] LAST = "0\r\n\r\n".getBytes();
+
+
+  HTTPStream(HTTPRequest request, HTTPResponse response)
+  {
+    this.request = request;
+    this.response = response;
+    this.chunk = new byte[CHUNK];
+  }
+
+
+  /**
+   *
+   * True when the header has been sent, and the response can no longer be changed
+   *
+   */
+  public boolean open()
+  {
+    return(open);
+  }
+
+
+  @Override
+  public void write(int b) throws IOException
+  {
+    if (pos == chunk.length) flush();
+    chunk[pos++] = (byte) b;
+  }
+
+
+  @Override
+  public void write(byte[] data, int off, int len) throws IOException
+  {
+    if (pos + len > chunk.length) flush();
+
+    if (len >= chunk.length)
+    {
+      // The channel may keep the data until it is sent
+      send(Arrays.copyOfRange(data,off,off+len),0,len);
+      return;
+    }
+
+    System.arraycopy(data,off,chunk,pos,len);
+    pos += len;
+  }
+
+
+  @Override
+  public void flush() throws IOException
+  {
+    if (pos == 0) return;
+
+    // The channel may keep the chunk until it is sent
+    send(chunk,0,pos);
+
+    pos = 0;
+    chunk = new byte[CHUNK];
+  }
+
+
+  /**
+   *
+   * Give up the response. Unsent output is discarded. If the header has
+   * already been sent, the connection is closed, since the body cannot be completed.
+   *
+   */
+  public void abort()
+  {
+    pos = 0;
+
+    if (open)
+    {
+      closed = true;
+      HTTP2Stream http2 = request.http2();
+
+      if (http2 != null) http2.reset();
+      else               request.channel().failed();
+    }
+  }
+
+
+  @Override
+  public void close() throws IOException
+  {
+    if (closed) return;
+    closed = true;
+
+    try
+    {
+      if (!open)
+      {
+        response.setBody(Arrays.copyOf(chunk,pos));
+        request.respond(response);
+        return;
+      }
+
+      if (request.http2() != null)
+      {
+        request.http2().data(ByteBuffer.wrap(chunk,0,pos),true);
+        return;
+      }
+
+      if (pos == 0)
+      {
+        request.channel().write(ByteBuffer.wrap(LAST));
+        return;
+      }
+
+      ByteBuffer size = ByteBuffer.wrap((Integer.toHexString(pos)+"\r\n").getBytes());
+      request.channel().write(new ByteBuffer[] {size,ByteBuffer.wrap(chunk,0,pos),ByteBuffer.wrap(EOL),ByteBuffer.wrap(LAST)});
+    }
+    catch (Exception e)
+    {
+      throw new IOException(e);
+    }
+  }
+
+
+  private void send(byte[] data, int off, int len) throws IOException
+  {
+    HTTP2Stream http2 = request.http2();
+    if (http2 != null) {send(http2,data,off,len); return;}
+
+    ByteBuffer head = null;
+    ByteBuffer size = ByteBuffer.wrap((Integer.toHexString(len)+"\r\n").getBytes());
+
+    if (!open)
+    {
+      open = true;
+      response.chunked();
+      head = ByteBuffer.wrap(response.header().getBytes());
+    }
+
+    ByteBuffer body = ByteBuffer.wrap(data,off,len);
+    ByteBuffer[] buffers = new ByteBuffer[] {size,body,ByteBuffer.wrap(EOL)};
+    if (head != null) buffers = new ByteBuffer[] {head,size,body,ByteBuffer.wrap(EOL)};
+
+    try {request.channel().write(buffers);}
+    catch (Exception e) {throw new IOException(e);}
+  }
+
+
+  private void send(HTTP2Stream http2, byte[] data, int off, int len) throws IOException
+  {
+    try
+    {
+      if (!open)
+      {
+        open = true;
+        response.chunked();
+        http2.headers(response,false);
+      }
+
+      http2.data(ByteBuffer.wrap(data,off,len),false);
+    }
+    catch (Exception e)
+    {
+      throw new IOException(e);
+    }
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 3 only, as
+ * published by the Free Software Foundation.
+
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ */
+
+package database.js.servers.http;
+
+import java.util.ArrayList;
+
+
+/**
+ *
+ * A hashed timer wheel for the clients of one waiter. It is only used from
+ * the waiter thread. Each slot covers one tick. A client is placed in the slot
+ * of its deadline, and is only looked at when that slot comes around. Deadlines
+ * beyond the wheel are parked in the last slot and placed again when reached.
+ * A client that has been active since it was placed is just moved forward,
+ * so the work per tick is proportional to what expires, not to the number of clients.
+ *
+ */
+class HTTPTimer
+{
+  private int size = 0;
+  private int cursor = 0;
+
+  private long time;
+  private final long tick;
+  private final Expiry expiry;
+  private final ArrayList<HTTPChannel>[] wheel;
+
+  private final static int SLOTS = 64;
+
+
+  @SuppressWarnings("unchecked")
+  HTTPTimer(Expiry expiry, long tick)
+  {
+    this.tick = tick;
+    this.expiry = expiry;
+    this.time = System.currentTimeMillis();
+    this.wheel = new ArrayList[SLOTS];
+
+    for (int i = 0; i < SLOTS; i++)
+      wheel[i] = new ArrayList<HTTPChannel>();
+  }
+
+
+  int size()
+  {
+    return(size);
+  }
+
+
+  /**
+   *
+   * How long the waiter may block in select before the next tick is due
+   *
+   */
+  long timeout()
+  {
+    if (size == 0) return(0);
+    return(Math.max(1,time + tick - System.currentTimeMillis()));
+  }
+
+
+  void schedule(HTTPChannel client, long deadline)
+  {
+    long ticks = (deadline - time) / tick;
+
+    if (ticks < 1) ticks = 1;
+    if (ticks >= SLOTS) ticks = SLOTS - 1;
+
+    size++;
+    wheel[(int) ((cursor + ticks) % SLOTS)].add(client);
+  }
+
+
+  /**
+   *
+   * Advances the wheel to now. Clients in the passed slots are handed
+   * to the expiry, which tells when to look at them again, if ever.
+   *
+   */
+  void expire()
+  {
+    long now = System.currentTimeMillis();
+
+    while(time + tick <= now)
+    {
+      time += tick;
+      cursor = (cursor + 1) % SLOTS;
+
+      ArrayList<HTTPChannel> slot = wheel[cursor];
+      if (slot.isEmpty()) continue;
+
+      wheel[cursor] = new ArrayList<HTTPChannel>();
+      size -= slot.size();
+
+      for(HTTPChannel client : slot)
+      {
+        long next = expiry.expire(client,now);
+        if (next > 0) schedule(client,next);
+      }
+    }
+  }
+
+
+  interface Expiry
+  {
+    /**
+     *
+     * Returns the next time the client should be looked at,
+     * or 0 if it is gone.
+     *
+     */
+    long expire(HTTPChannel client, long now);
+  }
+}
@@ -12,11 +12,8 @@
 
 package database.js.servers.http;
 
-import java.util.Map;
 import java.util.Set;
-import java.util.HashSet;
 import java.util.Iterator;
-import java.util.ArrayList;
 import java.nio.ByteBuffer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -27,23 +24,23 @@ import database.js.pools.ThreadPool;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 
-class HTTPWaiter extends Thread
+class HTTPWaiter extends Thread implements HTTPTimer.Expiry
 {
   private final int id;
   private final int timeout;
+  private final int reqtmout;
   private final Server server;
   private final Config config;
   private final boolean embedded;
+  private final HTTPTimer timer;
   private final Selector selector;
-  private final ThreadPool workers;
 
-  private final ArrayList<HTTPChannel> queue =
-    new ArrayList<HTTPChannel>();
-
-  private final HashSet<HTTPChannel> connected =
-    new HashSet<HTTPChannel>();
+  // Filled by the acceptors, emptied by the waiter
+  private final ConcurrentLinkedQueue<HTTPChannel> queue =
+    new ConcurrentLinkedQueue<HTTPChannel>();
 
   private final ConcurrentHashMap<SelectionKey,HTTPRequest> incomplete =
     new ConcurrentHashMap<SelectionKey,HTTPRequest>();
@@ -59,10 +56,11 @@ class HTTPWaiter extends Thread
     this.config = server.config();
     this.selector = Selector.open();
     this.timeout = config.getHTTP().timeout;
+    this.reqtmout = config.getHTTP().reqtmout;
+    this.timer = new HTTPTimer(this,Math.max(100,Math.min(timeout,reqtmout)/8));
 
     this.setDaemon(true);
     this.setName("HTTPWaiter("+id+")");
-    this.workers = new ThreadPool(config.getTopology().workers);
 
     this.start();
   }
@@ -82,8 +80,7 @@ class HTTPWaiter extends Thread
 
   void addClient(HTTPChannel client) throws Exception
   {
-    synchronized(this)
-    {queue.add(client);}
+    queue.offer(client);
     selector.wakeup();
   }
 
@@ -95,21 +92,21 @@ class HTTPWaiter extends Thread
     while(ready == 0)
     {
       boolean add = false;
+      HTTPChannel client = null;
+      long now = System.currentTimeMillis();
 
-      synchronized(this)
+      while((client = queue.poll()) != null)
       {
-        for(HTTPChannel client : queue)
-        {
-          add = true;
-          connected.add(client);
-          client.channel().register(selector,SelectionKey.OP_READ,client);
-        }
-
-        queue.clear();
+        add = true;
+        timer.schedule(client,now+timeout);
+        client.register(client.channel().register(selector,SelectionKey.OP_READ,client));
       }
 
       if (add) Thread.yield();
-      ready = selector.select();
+      ready = selector.select(timer.timeout());
+
+      // Expiry is driven by the select loop itself
+      timer.expire();
     }
   }
 
@@ -128,10 +125,16 @@ class HTTPWaiter extends Thread
         Set<SelectionKey> selected = selector.selectedKeys();
         Iterator<SelectionKey> iterator = selected.iterator();
 
-        if (workers.full() && (System.currentTimeMillis() - lmsg) > 5000)
+        if ((System.currentTimeMillis() - lmsg) > 5000)
         {
-          lmsg = System.currentTimeMillis();
-          logger.info("clients="+selector.keys().size()+" threads="+workers.threads()+" queue="+workers.size());
+          for(ThreadPool workers : ThreadPool.pools())
+          {
+            if (workers.full())
+            {
+              lmsg = System.currentTimeMillis();
+              logger.info("clients="+selector.keys().size()+" "+workers);
+            }
+          }
         }
 
         while(iterator.hasNext())
@@ -139,9 +142,27 @@ class HTTPWaiter extends Thread
           SelectionKey key = iterator.next();
           iterator.remove();
 
-          if (key.isReadable() && key.isValid())
+          HTTPChannel client = (HTTPChannel) key.attachment();
+
+          if (client.handshaking())
+          {
+            if (!key.isValid() || !client.handshake())
+              continue;
+
+            // Data that came along with the handshake is read right away
+            if (!client.pending())
+              continue;
+          }
+          else if (key.isValid() && key.isWritable())
+          {
+            client.flush();
+
+            if (!key.isValid() || !key.isReadable())
+              continue;
+          }
+
+          if (key.isValid() && (key.isReadable() || client.pending()))
           {
-            HTTPChannel client = (HTTPChannel) key.attachment();
             SocketChannel channel = (SocketChannel) key.channel();
 
             ByteBuffer buf = client.read();
@@ -158,36 +179,73 @@ class HTTPWaiter extends Thread
             }
 
             int read = buf.remaining();
+            HTTP2Connection http2 = client.http2();
 
-            if (read > 0)
-            {
-              boolean done = false;
-              HTTPRequest request = incomplete.remove(key);
-              if (request == null) request = new HTTPRequest(this,client,key);
+            if (http2 == null && read > 0 && !incomplete.containsKey(key) && client.http2(buf))
+              http2 = client.http2(new HTTP2Connection(this,client,key));
 
+            if (http2 != null)
+            {
               try
               {
-                if (!request.add(buf)) incomplete.put(key,request);
-                else done = true;
+                http2.read(buf);
               }
               catch (Exception e)
               {
-                logger.log(Level.SEVERE,e.getMessage(),e);
-                error(channel,400,false);
-                continue;
+                logger.log(Level.WARNING,e.getMessage(),e);
+                client.failed();
+              }
+              finally
+              {
+                client.release(buf);
               }
 
+              continue;
+            }
+
+            if (read > 0)
+            {
+              int code = 400;
+              ByteBuffer data = buf;
+
+              HTTPRequest request = incomplete.remove(key);
+              if (request == null) request = new HTTPRequest(this,client,key);
+
               try
               {
-                logger.finest("Request "+request.path()+" submit "+done);
-                if (done) workers.submit(new HTTPWorker(workers,request));
+                // The read may hold several pipelined requests
+                while(data != null)
+                {
+                  if (!request.add(data))
+                  {
+                    incomplete.put(key,request);
+                    break;
+                  }
+
+                  code = 500;
+                  data = request.excess();
+
+                  logger.finest("Request "+request.path()+" submit");
+                  if (client.enqueue(request)) HTTPWorker.submit(request);
+
+                  code = 400;
+                  if (data != null) request = new HTTPRequest(this,client,key);
+                }
               }
               catch (Exception e)
               {
                 logger.log(Level.SEVERE,e.getMessage(),e);
-                error(channel,500,false);
+                error(channel,code,false);
                 continue;
               }
+              finally
+              {
+                client.release(buf);
+              }
+            }
+            else
+            {
+              client.release(buf);
             }
           }
           else
@@ -204,50 +262,53 @@ class HTTPWaiter extends Thread
   }
 
 
-  void cleanout()
+  /**
+   *
+   * Called by the timer, when the client might have expired. Stalled,
+   * incomplete requests are answered with 400. Idle connections are closed,
+   * unless a request is in progress.
+   *
+   */
+  @Override
+  public long expire(HTTPChannel client, long now)
   {
-    ArrayList<SelectionKey> cancelled = new ArrayList<SelectionKey>();
+    SocketChannel channel = client.channel();
+
+    if (!channel.isOpen())
+      return(0);
 
-    for(Map.Entry<SelectionKey,HTTPRequest> entry : incomplete.entrySet())
-      if (entry.getValue().cancelled()) cancelled.add(entry.getKey());
+    SelectionKey key = channel.keyFor(selector);
+    HTTPRequest request = key == null ? null : incomplete.get(key);
 
-    for(SelectionKey key : cancelled)
+    if (request != null && now - request.started() > reqtmout)
     {
       incomplete.remove(key);
       logger.info("Removing incomplete request");
-
-      try
-      {
-        ByteBuffer buf = ByteBuffer.allocate(1024);
-        SocketChannel rsp = (SocketChannel) key.channel();
-        buf.put(err400(false));
-        buf.position(0);
-        rsp.write(buf);
-        rsp.close();
-      }
-      catch (Exception e) {;}
+      error(channel,400,false);
+      return(0);
     }
 
-    long now = System.currentTimeMillis();
-    HTTPChannel[] open = connected.toArray(new HTTPChannel[0]);
+    long deadline = client.touched() + timeout;
 
-    for(HTTPChannel client : open)
+    if (deadline <= now)
     {
-      boolean timedout = now - client.touched() > timeout;
-      boolean connected = client.channel().isConnected() || client.channel().isOpen();
-
-      if (!connected || (timedout && !client.stayalive()))
+      if (!client.stayalive())
       {
-        this.connected.remove(client);
-        if (timedout) logger.fine("Client KeepAlive timed out");
+        logger.fine("Client KeepAlive timed out");
 
-        if (connected)
-        {
-          try {client.channel().close();}
-          catch(Exception e) {;}
-        }
+        try {channel.close();}
+        catch(Exception e) {;}
+
+        return(0);
       }
+
+      deadline = now + timeout;
     }
+
+    if (request != null)
+      deadline = Math.min(deadline,request.started() + reqtmout + 1);
+
+    return(deadline);
   }
 
 
@@ -311,4 +372,18 @@ class HTTPWaiter extends Thread
 
     return(page.getBytes());
   }
+
+
+  public static byte[] err503(boolean rest, int retry)
+  {
+    String msg = "<b>Service Unavailable</b>";
+    if (rest) msg = "{\"status\": \"failed\", \"message\": \"Service Unavailable\"}";
+
+    String page = "HTTP/1.1 503 Service Unavailable" + EOL +
+                  "Retry-After: " + retry + EOL +
+                  "Content-Type: text/html" + EOL +
+                  "Content-Length: "+msg.length() + EOL + EOL + msg;
+
+    return(page.getBytes());
+  }
 }
\ No newline at end of file
@@ -13,13 +13,13 @@
 package database.js.servers.http;
 
 import database.js.servers.Server;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 public class HTTPWaiterPool
 {
   private static HTTPWaiter[] waiters;
-  private static volatile short next = -1;
-  private static final Object LOCK = new Object();
+  private static final AtomicInteger next = new AtomicInteger(0);
 
 
   public HTTPWaiterPool(Server server, boolean embedded, short threads) throws Exception
@@ -42,11 +42,8 @@ public class HTTPWaiterPool
 
   public HTTPWaiter getWaiter()
   {
-    synchronized(LOCK)
-    {
-      next = (short) (++next % waiters.length);
-      return(waiters[next]);
-    }
+    int next = HTTPWaiterPool.next.getAndIncrement() & Integer.MAX_VALUE;
+    return(waiters[next % waiters.length]);
   }
 
 
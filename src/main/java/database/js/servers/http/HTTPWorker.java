@@ -12,25 +12,73 @@
 
 package database.js.servers.http;
 
+import java.nio.ByteBuffer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import database.js.config.Handlers;
+import database.js.config.Topology;
 import database.js.handlers.Handler;
 import database.js.pools.ThreadPool;
+import database.js.handlers.FileHandler;
+import database.js.handlers.RestHandler;
 
 
 public class HTTPWorker implements Runnable
 {
   private final Logger logger;
   private final Handlers handlers;
-  private final ThreadPool workers;
   private final HTTPChannel channel;
   private final HTTPRequest request;
 
+  // Seconds a client is asked to wait, when a pool is saturated
+  private final static int RETRY = 1;
 
-  public HTTPWorker(ThreadPool workers, HTTPRequest request) throws Exception
+
+  /**
+   *
+   * Hands the request to the pool for its kind of traffic. If that pool
+   * is saturated, the client gets a 503 right away. For HTTP/1.1 the next
+   * pipelined request, if any, is then tried.
+   *
+   */
+  static void submit(HTTPRequest request) throws Exception
+  {
+    while(request != null)
+    {
+      HTTPChannel channel = request.channel();
+      Topology topology = channel.config().getTopology();
+
+      Handler handler = null;
+      ThreadPool workers = null;
+
+      if (!channel.admin())
+        handler = channel.config().getHTTP().handlers.getHandler(request.path(),request.method());
+
+      if (channel.admin())                     workers = ThreadPool.get("admin",2,topology.queue,topology.virtual);
+      else if (handler instanceof FileHandler) workers = ThreadPool.get("file",Math.max(4,Topology.cores),topology.queue,topology.virtual);
+      else                                     workers = ThreadPool.get("rest",topology.workers,topology.queue,topology.virtual);
+
+      if (workers.submit(new HTTPWorker(request)))
+        return;
+
+      channel.logger().fine(workers.name()+" pool saturated, "+request.path()+" rejected");
+
+      byte[] page = HTTPWaiter.err503(handler instanceof RestHandler,RETRY);
+
+      // The waiter must not wait for its own client
+      if (request.http2() != null) request.respond(page);
+      else channel.write(new ByteBuffer[] {ByteBuffer.wrap(page)},false);
+
+      channel.stayalive(false);
+
+      if (request.http2() != null) return;
+      request = channel.dequeue();
+    }
+  }
+
+
+  private HTTPWorker(HTTPRequest request) throws Exception
   {
-    this.workers  = workers;
     this.request  = request;
     this.channel  = request.channel();
     this.logger   = request.channel().logger();
@@ -65,10 +113,8 @@ public class HTTPWorker implements Runnable
         if (logger.getLevel() == Level.FINEST)
           logger.finest("redirect: "+new String(response.page()));
 
-        request.respond(response.page());
+        request.respond(response);
         this.channel.stayalive(false);
-        channel.workers().done();
-
         return;
       }
 
@@ -82,30 +128,44 @@ public class HTTPWorker implements Runnable
       {
         logger.warning("No appropiate handler mapped to path="+path+" method="+method);
 
-        this.workers.done();
         this.channel.stayalive(false);
 
         try {request.respond(HTTPWaiter.err500(false));} catch (Exception ex) {;}
-        this.channel.failed();
+        request.failed();
 
         return;
       }
 
       HTTPResponse response = handler.handle(request);
-      if (response != null) request.respond(response.page());
-
-      channel.workers().done();
+      if (response != null) request.respond(response);
     }
     catch(Throwable e)
     {
-      this.workers.done();
       logger.log(Level.SEVERE,e.getMessage(),e);
       try {request.respond(HTTPWaiter.err500(false));} catch (Exception ex) {;}
-      this.channel.failed();
+      request.failed();
     }
     finally
     {
       this.channel.stayalive(false);
+      this.next();
+    }
+  }
+
+
+  private void next()
+  {
+    // HTTP/2 streams are not queued
+    if (request.http2() != null) return;
+
+    try
+    {
+      submit(channel.dequeue());
+    }
+    catch (Exception e)
+    {
+      logger.log(Level.SEVERE,e.getMessage(),e);
+      this.channel.failed();
     }
   }
 }
\ No newline at end of file
@@ -19,8 +19,10 @@ import java.util.logging.Logger;
 import database.js.config.Config;
 import database.js.servers.Server;
 import database.js.cluster.MailBox;
+import java.util.concurrent.locks.Condition;
 import database.js.servers.http.HTTPChannel;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 
 public class RESTClient implements RESTConnection
@@ -39,6 +41,10 @@ public class RESTClient implements RESTConnection
   private final MailBox mailbox;
   private final ConcurrentHashMap<Long,RESTComm> incoming;
 
+  // Not a monitor, virtual threads would pin their carrier while waiting
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition arrived = lock.newCondition();
+
   private final static Logger logger = Logger.getLogger("http");
 
 
@@ -91,18 +97,24 @@ public class RESTClient implements RESTConnection
 
     RESTComm resp = null;
 
-    synchronized(this)
+    lock.lock();
+
+    try
     {
       while(true)
       {
-        resp = incoming.get(id);
+        resp = incoming.remove(id);
 
         if (resp != null) break;
         if (!up) throw new Exception("Lost connection to RESTServer");
 
-        this.wait();
+        arrived.await();
       }
     }
+    finally
+    {
+      lock.unlock();
+    }
 
     if (resp.extend() < 0) data = resp.page();
     else data = mailbox.read(extend,resp.size);
@@ -157,6 +169,10 @@ public class RESTClient implements RESTConnection
     this.up = false;
     server.deregister(this);
     logger.severe("RESTClient failed, bailing out");
+
+    lock.lock();
+    try {arrived.signalAll();}
+    finally {lock.unlock();}
   }
 
   @Override
@@ -182,6 +198,9 @@ public class RESTClient implements RESTConnection
   {
     logger.fine("Client Received "+calls.size()+" response(s)");
     for(RESTComm call : calls) incoming.put(call.id,call);
-    synchronized(this) {this.notifyAll();}
+
+    lock.lock();
+    try {arrived.signalAll();}
+    finally {lock.unlock();}
   }
 }
\ No newline at end of file
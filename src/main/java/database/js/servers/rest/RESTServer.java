@@ -22,6 +22,7 @@ import java.util.logging.Logger;
 import database.js.config.Config;
 import database.js.servers.Server;
 import database.js.cluster.MailBox;
+import database.js.config.Topology;
 import database.js.pools.ThreadPool;
 import database.js.client.HTTPRequest;
 import database.js.client.HTTPResponse;
@@ -63,7 +64,10 @@ public class RESTServer implements RESTConnection
     if (config.getTopology().hot) http++;
 
     this.rid = (short) (server.id() - http);
-    this.workers = new ThreadPool(config.getTopology().workers);
+
+    // Not bounded here, the HTTP server has already accepted the requests
+    Topology topology = config.getTopology();
+    this.workers = ThreadPool.get("rest",topology.workers,-1,topology.virtual);
 
     serve();
   }
@@ -230,6 +234,7 @@ public class RESTServer implements RESTConnection
         }
 
         response.add(buf);
+        channel.release(buf);
       }
 
       channel.socket().setSoTimeout(0);
@@ -322,7 +327,7 @@ public class RESTServer implements RESTConnection
         http.add(page);
       }
 
-      workers.submit(new RESTWorker(this,workers,http));
+      workers.submit(new RESTWorker(this,http));
     }
   }
 }
\ No newline at end of file
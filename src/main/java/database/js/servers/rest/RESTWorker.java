@@ -16,7 +16,6 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import database.js.servers.Server;
 import database.js.config.Handlers;
-import database.js.pools.ThreadPool;
 import database.js.handlers.RestHandler;
 import database.js.servers.http.HTTPRequest;
 import database.js.servers.http.HTTPResponse;
@@ -27,14 +26,12 @@ public class RESTWorker implements Runnable
   private final Logger logger;
   private final RESTComm bridge;
   private final RESTServer rserver;
-  private final ThreadPool workers;
 
 
-  public RESTWorker(RESTServer rserver, ThreadPool workers, RESTComm bridge)
+  public RESTWorker(RESTServer rserver, RESTComm bridge)
   {
     this.bridge = bridge;
     this.rserver = rserver;
-    this.workers = workers;
     this.logger = rserver.logger();
   }
 
@@ -69,7 +66,6 @@ public class RESTWorker implements Runnable
     }
     catch (Exception e)
     {
-      this.workers.done();
       logger.log(Level.SEVERE,e.getMessage(),e);
 
       byte[] data = ("{\"status\": \""+e.getMessage()+"\"}").getBytes();
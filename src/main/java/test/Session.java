@@ -30,6 +30,9 @@ public class Session
   private final String host;
   private final Socket socket;
 
+  // Shared, so that reconnects can resume the TLS session
+  private static SSLContext ctx = null;
+
 
   public Session(String host, int port, boolean ssl) throws Exception
   {
@@ -45,9 +48,7 @@ public class Session
       }
       else
       {
-        SSLContext ctx = SSLContext.getInstance("TLS");
-        ctx.init(null,new X509TrustManager[] {new FakeTrustManager()}, new java.security.SecureRandom());
-        socket = ctx.getSocketFactory().createSocket(host,port);
+        socket = context().getSocketFactory().createSocket(host,port);
         ((SSLSocket) socket).startHandshake();
       }
 
@@ -65,6 +66,18 @@ public class Session
   }
 
 
+  private static synchronized SSLContext context() throws Exception
+  {
+    if (ctx == null)
+    {
+      ctx = SSLContext.getInstance("TLS");
+      ctx.init(null,new X509TrustManager[] {new FakeTrustManager()}, new java.security.SecureRandom());
+    }
+
+    return(ctx);
+  }
+
+
   public void invoke(String url, String message) throws Exception
   {
     HTTPRequest request = new HTTPRequest(host,url);